@@ -41,6 +41,19 @@ def create_table(client, table_name, attribute_definitions, key_schema,
     except Exception as e:
         print(f"An unexpected error occurred while creating table '{table_name}': {e}")
 
+def enable_time_to_live(client, table_name, attribute_name):
+    try:
+        client.update_time_to_live(
+            TableName=table_name,
+            TimeToLiveSpecification={"Enabled": True, "AttributeName": attribute_name}
+        )
+        print(f"TTL on '{attribute_name}' enabled for table '{table_name}'.")
+    except ClientError as e:
+        if e.response["Error"]["Code"] == "ValidationException" and "already enabled" in str(e):
+            print(f"TTL already enabled for table '{table_name}'.")
+        else:
+            print(f"Error enabling TTL for table '{table_name}': {e}")
+
 def main():
     dynamodb = create_dynamodb_client()
 
@@ -122,5 +135,8 @@ def main():
         global_secondary_indexes=master_data_global_secondary_indexes
     )
 
+    # Import jobs carry an expires_at epoch seconds attribute
+    enable_time_to_live(dynamodb, master_data_table_name, "expires_at")
+
 if __name__ == "__main__":
     main()
\ No newline at end of file
@@ -0,0 +1,102 @@
+package org.reddot15.be_stockmanager.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reddot15.be_stockmanager.entity.Product;
+import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
+import org.reddot15.be_stockmanager.util.ExcelColumn;
+import org.reddot15.be_stockmanager.util.ExcelUtil;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Rows per second of a product Excel export under each column width mode: widths estimated from character
+ * lengths (SAMPLED, MAX) against POI auto-sizing (AUTO). 100k product-like rows with the export's columns,
+ * served in 1,000-row pages like the DynamoDB queries, written to a null stream.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExcelExportBenchmark {
+    private static final int ROWS = 100_000;
+    private static final int PAGE_SIZE = 1_000;
+    private static final String CURSOR_OFFSET = "offset";
+
+    @Param({"SAMPLED", "MAX", "AUTO"})
+    private ExcelUtil.ColumnWidth width;
+
+    private List<Product> products;
+    private List<ExcelColumn<Product>> columns;
+
+    @Setup
+    public void setUp() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String[] categories = {"Beverages", "Snacks", "Household", "Personal Care", "Frozen Food"};
+        products = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            products.add(Product.builder()
+                    .entityId("PROD" + String.format("%06d", i))
+                    .name("Product " + i + " " + "x".repeat(random.nextInt(5, 40)))
+                    .vendorId("VENDOR" + String.format("%03d", random.nextInt(200)))
+                    .categoryName(categories[random.nextInt(categories.length)])
+                    .importPrice(random.nextInt(100, 100_000) / 100.0)
+                    .salePrice(random.nextInt(100, 150_000) / 100.0)
+                    .amount(random.nextInt(0, 5_000))
+                    .earliestExpiry("2026-" + String.format("%02d", random.nextInt(1, 13)) + "-15")
+                    .vat(0.1)
+                    .build());
+        }
+        // Same columns as ProductService.exportProductsToExcel
+        columns = List.of(
+                new ExcelColumn<>("ID", Product::getEntityId),
+                new ExcelColumn<>("Name", Product::getName, 40),
+                new ExcelColumn<>("Vendor ID", Product::getVendorId),
+                new ExcelColumn<>("Category", Product::getCategoryName),
+                new ExcelColumn<>("Import Price", Product::getImportPrice),
+                new ExcelColumn<>("Sale Price", Product::getSalePrice),
+                new ExcelColumn<>("Amount", Product::getAmount),
+                new ExcelColumn<>("Earliest Expiry", Product::getEarliestExpiry),
+                new ExcelColumn<>("VAT", Product::getVat));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void export() throws IOException {
+        ExcelUtil.exportToExcel("products", columns, pages(), width).writeTo(OutputStream.nullOutputStream());
+    }
+
+    // Pages of the in-memory rows, resumed from an offset cursor
+    private Function<Map<String, AttributeValue>, PaginatedResult<Product>> pages() {
+        return exclusiveStartKey -> {
+            int from = exclusiveStartKey == null ? 0 : Integer.parseInt(exclusiveStartKey.get(CURSOR_OFFSET).n());
+            int to = Math.min(from + PAGE_SIZE, products.size());
+            return PaginatedResult.<Product>builder()
+                    .items(products.subList(from, to))
+                    .lastEvaluatedKey(to < products.size()
+                            ? Map.of(CURSOR_OFFSET, AttributeValue.fromN(Integer.toString(to)))
+                            : null)
+                    .build();
+        };
+    }
+}
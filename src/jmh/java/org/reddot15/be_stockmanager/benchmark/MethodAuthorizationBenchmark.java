@@ -0,0 +1,113 @@
+package org.reddot15.be_stockmanager.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reddot15.be_stockmanager.config.security.Authority;
+import org.reddot15.be_stockmanager.config.security.PermissionAuthenticationConverter;
+import org.reddot15.be_stockmanager.config.security.RequiresPermission;
+import org.reddot15.be_stockmanager.config.security.RequiresPermissionAuthorizationManager;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.authorization.method.PreAuthorizeAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Per-request cost of converting a Jwt and authorizing one service method: the previous setup
+ * (JwtGrantedAuthoritiesConverter + @PreAuthorize("hasAuthority(...)")) against the permission mask
+ * (PermissionAuthenticationConverter + @RequiresPermission).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MethodAuthorizationBenchmark {
+    private Jwt jwt;
+
+    private JwtAuthenticationConverter spelConverter;
+    private PreAuthorizeAuthorizationManager spelManager;
+    private SimpleMethodInvocation spelInvocation;
+    private Authentication spelAuthentication;
+
+    private PermissionAuthenticationConverter maskConverter;
+    private RequiresPermissionAuthorizationManager maskManager;
+    private SimpleMethodInvocation maskInvocation;
+    private Authentication maskAuthentication;
+
+    public static class GuardedService {
+        @PreAuthorize("hasAuthority('VIEW_PRODUCT')")
+        public void viewWithSpel() {
+        }
+
+        @RequiresPermission(Authority.VIEW_PRODUCT)
+        public void viewWithMask() {
+        }
+    }
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        // Scope of an admin: its role and every permission
+        String scope = "ROLE_ADMIN " + Arrays.stream(Authority.values()).map(Enum::name).collect(Collectors.joining(" "));
+        jwt = Jwt.withTokenValue("token")
+                .header("alg", "HS512")
+                .subject("admin@reddot15.com")
+                .claim("scope", scope)
+                .issuedAt(Instant.now())
+                .expiresAt(Instant.now().plusSeconds(3600))
+                .build();
+        GuardedService target = new GuardedService();
+
+        JwtGrantedAuthoritiesConverter authoritiesConverter = new JwtGrantedAuthoritiesConverter();
+        authoritiesConverter.setAuthorityPrefix("");
+        spelConverter = new JwtAuthenticationConverter();
+        spelConverter.setJwtGrantedAuthoritiesConverter(authoritiesConverter);
+        spelManager = new PreAuthorizeAuthorizationManager();
+        spelInvocation = new SimpleMethodInvocation(target, GuardedService.class.getMethod("viewWithSpel"));
+        spelAuthentication = spelConverter.convert(jwt);
+
+        maskConverter = new PermissionAuthenticationConverter();
+        maskManager = new RequiresPermissionAuthorizationManager();
+        maskInvocation = new SimpleMethodInvocation(target, GuardedService.class.getMethod("viewWithMask"));
+        maskAuthentication = maskConverter.convert(jwt);
+    }
+
+    @Benchmark
+    public AuthorizationResult convertAndAuthorizeSpel() {
+        Authentication authentication = spelConverter.convert(jwt);
+        return spelManager.authorize(() -> authentication, spelInvocation);
+    }
+
+    @Benchmark
+    public AuthorizationResult convertAndAuthorizeMask() {
+        Authentication authentication = maskConverter.convert(jwt);
+        return maskManager.authorize(() -> authentication, maskInvocation);
+    }
+
+    @Benchmark
+    public AuthorizationResult authorizeSpel() {
+        return spelManager.authorize(() -> spelAuthentication, spelInvocation);
+    }
+
+    @Benchmark
+    public AuthorizationResult authorizeMask() {
+        return maskManager.authorize(() -> maskAuthentication, maskInvocation);
+    }
+}
@@ -0,0 +1,95 @@
+package org.reddot15.be_stockmanager.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reddot15.be_stockmanager.util.PaginationTokenCodec;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signed binary pagination tokens (PaginationTokenCodec) against the JSON format they replaced, on a
+ * products search cursor (pk, entity_id, sale_price).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaginationTokenCodecBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private PaginationTokenCodec codec;
+    private Map<String, AttributeValue> lastEvaluatedKey;
+    private String binaryToken;
+    private String jsonToken;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = new PaginationTokenCodec("benchmark-signing-key-0123456789ab".getBytes(StandardCharsets.UTF_8));
+        lastEvaluatedKey = Map.of(
+                "pk", AttributeValue.fromS("Products"),
+                "entity_id", AttributeValue.fromS("8d5c2b8e-4a57-4f0e-9a52-2f0a4c8b7d11"),
+                "sale_price", AttributeValue.fromN("129.99"));
+        binaryToken = codec.encode(lastEvaluatedKey);
+        jsonToken = encodeJson(lastEvaluatedKey);
+    }
+
+    @Benchmark
+    public String encodeBinary() {
+        return codec.encode(lastEvaluatedKey);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> decodeBinary() {
+        return codec.decode(binaryToken);
+    }
+
+    @Benchmark
+    public String encodeJson() throws IOException {
+        return encodeJson(lastEvaluatedKey);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> decodeJson() throws IOException {
+        return decodeJson(jsonToken);
+    }
+
+    // The previous PaginationTokenUtil format: base64url of a JSON map of strings, types guessed on decode
+
+    private String encodeJson(Map<String, AttributeValue> key) throws IOException {
+        Map<String, String> stringMap = new HashMap<>();
+        key.forEach((name, value) -> stringMap.put(name, value.s() != null ? value.s() : value.n()));
+        return Base64.getUrlEncoder().encodeToString(objectMapper.writeValueAsString(stringMap).getBytes());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, AttributeValue> decodeJson(String token) throws IOException {
+        Map<String, String> stringMap = objectMapper.readValue(new String(Base64.getUrlDecoder().decode(token)), Map.class);
+        Map<String, AttributeValue> key = new HashMap<>();
+        stringMap.forEach((name, value) -> {
+            try {
+                new BigDecimal(value);
+                key.put(name, AttributeValue.fromN(value));
+            } catch (NumberFormatException e) {
+                key.put(name, AttributeValue.fromS(value));
+            }
+        });
+        return key;
+    }
+}
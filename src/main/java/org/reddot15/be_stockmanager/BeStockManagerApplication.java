@@ -2,8 +2,10 @@ package org.reddot15.be_stockmanager;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class BeStockManagerApplication {
     public static void main(String[] args) {
         SpringApplication.run(BeStockManagerApplication.class, args);
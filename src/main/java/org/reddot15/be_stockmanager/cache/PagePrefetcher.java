@@ -0,0 +1,163 @@
+package org.reddot15.be_stockmanager.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.dto.response.pagination.DDBPageResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Speculatively loads the page following the one just served, so the client's next request is answered from
+ * memory. Pages are keyed by listing, query and page token, bounded by an approximate byte budget and a max-age,
+ * and dropped whenever the listing is written on this node (other nodes' writes are only bounded by the max-age).
+ * Prefetches run on their own threads: page loaders fan out to the DynamoDB pool and join, which a prefetch
+ * holding a thread of that same pool could wait on forever.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Component
+public class PagePrefetcher {
+    ObjectMapper objectMapper;
+    ExecutorService prefetchExecutor;
+    boolean enabled;
+    AsyncCache<PageKey, PrefetchedPage> cache;
+    // Bounds the background queries competing with requests for the DynamoDB pool
+    Semaphore inFlight;
+    // Bumped on every write, so a prefetch started before it is discarded
+    Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    Counter skipped;
+
+    public PagePrefetcher(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${pagination.prefetch.enabled:false}") boolean enabled,
+            @Value("${pagination.prefetch.max-bytes:16777216}") long maxBytes,
+            @Value("${pagination.prefetch.max-age:5000}") long maxAgeMillis,
+            @Value("${pagination.prefetch.max-in-flight:8}") int maxInFlight) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.inFlight = new Semaphore(maxInFlight);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.prefetchExecutor = Executors.newFixedThreadPool(Math.max(1, maxInFlight), runnable -> {
+            Thread thread = new Thread(runnable, "page-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((PageKey key, PrefetchedPage page) -> page.weight())
+                .expireAfterWrite(Duration.ofMillis(maxAgeMillis))
+                .recordStats()
+                .buildAsync();
+        // Expose hit/miss/eviction metrics as cache.* {cache=page-prefetch}
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "page-prefetch");
+        this.skipped = Counter.builder("pagination.prefetch.skipped")
+                .description("Prefetches not started because too many were already running")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    // Serve the page from a prefetch when there is one, then prefetch the page after it; query holds the
+    // listing's parameters, compared element by element
+    @SuppressWarnings("unchecked")
+    public <R> DDBPageResponse<R> get(
+            String listing,
+            List<?> query,
+            String encodedNextPageToken,
+            Function<String, DDBPageResponse<R>> pageLoader) {
+        if (!enabled) return pageLoader.apply(encodedNextPageToken);
+
+        // Only follow-up pages are ever prefetched
+        DDBPageResponse<R> page = null;
+        if (encodedNextPageToken != null && !encodedNextPageToken.isBlank()) {
+            CompletableFuture<PrefetchedPage> prefetched = cache.getIfPresent(new PageKey(listing, query, encodedNextPageToken));
+            if (prefetched != null) {
+                try {
+                    PrefetchedPage prefetchedPage = prefetched.join();
+                    if (prefetchedPage != null) page = (DDBPageResponse<R>) prefetchedPage.page();
+                } catch (RuntimeException e) {
+                    log.debug("Prefetched {} page failed, loading it again: {}", listing, e.getMessage());
+                }
+            }
+        }
+        if (page == null) page = pageLoader.apply(encodedNextPageToken);
+
+        if (page.isHasMore() && page.getEncodedNextPageToken() != null)
+            prefetch(listing, query, page.getEncodedNextPageToken(), pageLoader);
+        return page;
+    }
+
+    // Drop every page of the listing, including prefetches still running
+    public void invalidate(String listing) {
+        if (!enabled) return;
+        generation(listing).incrementAndGet();
+        cache.synchronous().asMap().keySet().removeIf(key -> key.listing().equals(listing));
+    }
+
+    private <R> void prefetch(
+            String listing,
+            List<?> query,
+            String encodedNextPageToken,
+            Function<String, DDBPageResponse<R>> pageLoader) {
+        long generation = generation(listing).get();
+        cache.get(new PageKey(listing, query, encodedNextPageToken), (key, executor) -> {
+            if (!inFlight.tryAcquire()) {
+                skipped.increment();
+                // A null value is not kept
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    DDBPageResponse<R> page = pageLoader.apply(encodedNextPageToken);
+                    // Written meanwhile: the page may already be stale
+                    if (generation(listing).get() != generation) return null;
+                    return new PrefetchedPage(page, weigh(page));
+                } finally {
+                    inFlight.release();
+                }
+            }, prefetchExecutor);
+        });
+    }
+
+    private AtomicLong generation(String listing) {
+        return generations.computeIfAbsent(listing, key -> new AtomicLong());
+    }
+
+    // Serialized size, close to what the page costs to hold
+    private int weigh(DDBPageResponse<?> page) {
+        try {
+            return objectMapper.writeValueAsBytes(page).length;
+        } catch (JsonProcessingException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private record PageKey(String listing, List<?> query, String encodedNextPageToken) {}
+
+    private record PrefetchedPage(DDBPageResponse<?> page, int weight) {}
+}
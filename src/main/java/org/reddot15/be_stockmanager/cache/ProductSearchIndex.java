@@ -0,0 +1,299 @@
+package org.reddot15.be_stockmanager.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.entity.Product;
+import org.reddot15.be_stockmanager.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Trigram inverted index over product name and vendor_id, answering the keyword filter in memory.
+ * A keyword resolves to the smallest posting list among its trigrams, whose entries are then checked with
+ * the same substring test as the DynamoDB contains() filter, so the cost follows the matches, not the catalog.
+ * Writes on any node are announced on the products:changes channel; the index is only trusted while
+ * {@link #isReady()}, callers must fall back to the DynamoDB filter otherwise.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Component
+public class ProductSearchIndex implements MessageListener, SubscriptionListener {
+    private static final String PRODUCT_CHANGES_CHANNEL = "products:changes";
+    private static final int GRAM_LENGTH = 3;
+    // Tags this node's events so it does not reload its own writes
+    private static final String NODE_ID = UUID.randomUUID().toString();
+    // Separates the product ids of one event
+    private static final String ID_SEPARATOR = "\n";
+    // Keys per BatchGetItem
+    private static final int REFRESH_BATCH_SIZE = 100;
+
+    ProductRepository productRepository;
+    StringRedisTemplate stringRedisTemplate;
+    RedisMessageListenerContainer redisMessageListenerContainer;
+    ExecutorService dynamoDbExecutor;
+    boolean enabled;
+    // Ids written while a rebuild was loading, re-applied once it is swapped in
+    Set<String> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    AtomicBoolean rebuilding = new AtomicBoolean();
+
+    @NonFinal
+    volatile Snapshot snapshot;
+
+    public ProductSearchIndex(
+            ProductRepository productRepository,
+            StringRedisTemplate stringRedisTemplate,
+            RedisMessageListenerContainer redisMessageListenerContainer,
+            ExecutorService dynamoDbExecutor,
+            MeterRegistry meterRegistry,
+            @Value("${products.search-index.enabled:true}") boolean enabled) {
+        this.productRepository = productRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+        this.dynamoDbExecutor = dynamoDbExecutor;
+        this.enabled = enabled;
+        if (enabled) redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(PRODUCT_CHANGES_CHANNEL));
+        Gauge.builder("products.search_index.size", this, index -> index.snapshot != null ? index.snapshot.entries.size() : 0)
+                .description("Products held in the keyword search index")
+                .register(meterRegistry);
+        Gauge.builder("products.search_index.grams", this, index -> index.snapshot != null ? index.snapshot.postings.size() : 0)
+                .description("Distinct trigrams in the keyword search index")
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        // A dropped subscription may have missed changes
+        return snapshot != null && redisMessageListenerContainer.isListening();
+    }
+
+    // Matching product, with the sort key a page cursor resumes from
+    public record Match(String entityId, double salePrice) {}
+
+    // Matching products after (afterPrice, afterId), ordered like pk-sale_price-lsi;
+    // one more than limit is returned when there are more
+    public List<Match> search(
+            String keyword,
+            String categoryName,
+            Double minPrice,
+            Double maxPrice,
+            Double afterPrice,
+            String afterId,
+            int limit) {
+        Snapshot current = snapshot;
+        Comparator<Entry> order = Comparator.comparingDouble(Entry::salePrice).thenComparing(Entry::entityId);
+        Entry after = afterPrice != null && afterId != null ? new Entry(afterId, null, null, null, afterPrice) : null;
+        return current.candidates(keyword).stream()
+                .map(current.entries::get)
+                .filter(Objects::nonNull)
+                // Only products the sale_price indexes hold, within the requested filters
+                .filter(entry -> entry.salePrice() != null)
+                .filter(entry -> entry.matches(keyword))
+                .filter(entry -> categoryName == null || categoryName.isBlank() || categoryName.equals(entry.categoryName()))
+                .filter(entry -> minPrice == null || entry.salePrice() >= minPrice)
+                .filter(entry -> maxPrice == null || entry.salePrice() <= maxPrice)
+                .filter(entry -> after == null || order.compare(entry, after) > 0)
+                .sorted(order)
+                .limit(limit + 1L)
+                .map(entry -> new Match(entry.entityId(), entry.salePrice()))
+                .toList();
+    }
+
+    // Called after a product is written on this node
+    public void productSaved(Product product) {
+        productsSaved(List.of(product));
+    }
+
+    // Called after a batch of products is written on this node, announced as one event
+    public void productsSaved(List<Product> products) {
+        if (products.isEmpty()) return;
+        products.forEach(product -> apply(product.getEntityId(), product));
+        publish(products.stream().map(Product::getEntityId).toList());
+    }
+
+    // Called after a product is deleted on this node
+    public void productDeleted(String productId) {
+        apply(productId, null);
+        publish(List.of(productId));
+    }
+
+    // Change published by any node: "<nodeId>:<entityId>\n<entityId>..."
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if (separator < 0 || body.substring(0, separator).equals(NODE_ID)) return;
+        List<String> productIds = List.of(body.substring(separator + 1).split(ID_SEPARATOR));
+        CompletableFuture.runAsync(() -> {
+            try {
+                refresh(productIds);
+            } catch (RuntimeException e) {
+                log.warn("Failed to refresh {} products in the search index: {}", productIds.size(), e.getMessage());
+            }
+        }, dynamoDbExecutor);
+    }
+
+    // (Re)subscribed: changes may have been missed, rebuild from the table
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        CompletableFuture.runAsync(this::rebuild, dynamoDbExecutor);
+    }
+
+    // Safety net against lost events
+    @Scheduled(
+            initialDelayString = "${products.search-index.rebuild-interval:600000}",
+            fixedDelayString = "${products.search-index.rebuild-interval:600000}")
+    public void scheduledRebuild() {
+        if (enabled && snapshot != null) rebuild();
+    }
+
+    private void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) return;
+        try {
+            changedDuringRebuild.clear();
+            Snapshot rebuilt = new Snapshot();
+            productRepository.findAllProducts().forEach(rebuilt::put);
+            // Catch up on the writes made while loading, outside the lock
+            reload(drainChangedDuringRebuild()).forEach((productId, product) -> {
+                rebuilt.remove(productId);
+                if (product != null) rebuilt.put(product);
+            });
+            // Only the swap holds the lock; writes since the catch-up are applied to the new snapshot after it
+            List<String> changedSinceCatchUp;
+            synchronized (this) {
+                snapshot = rebuilt;
+                rebuilding.set(false);
+                changedSinceCatchUp = drainChangedDuringRebuild();
+            }
+            refresh(changedSinceCatchUp);
+            log.info("Product search index built: {} products, {} trigrams",
+                    rebuilt.entries.size(), rebuilt.postings.size());
+        } catch (RuntimeException e) {
+            log.warn("Failed to build product search index, keyword search uses DynamoDB: {}", e.getMessage());
+        } finally {
+            changedDuringRebuild.clear();
+            rebuilding.set(false);
+        }
+    }
+
+    private synchronized void apply(String productId, Product product) {
+        if (rebuilding.get()) changedDuringRebuild.add(productId);
+        Snapshot current = snapshot;
+        if (current == null) return;
+        current.remove(productId);
+        if (product != null) current.put(product);
+    }
+
+    private void refresh(List<String> productIds) {
+        reload(productIds).forEach(this::apply);
+    }
+
+    // Consistent reads, so a change announced by another node is never read older than it was written; one
+    // BatchGetItem at a time, so a reload on dynamoDbExecutor never waits on that pool. Ids no longer in the
+    // table map to null
+    private Map<String, Product> reload(List<String> productIds) {
+        Map<String, Product> reloaded = new HashMap<>();
+        for (int from = 0; from < productIds.size(); from += REFRESH_BATCH_SIZE) {
+            List<String> chunk = productIds.subList(from, Math.min(from + REFRESH_BATCH_SIZE, productIds.size()));
+            Map<String, Product> found = productRepository.batchFindByPkAndEntityIds(
+                    chunk, productRepository::partitionOf, true);
+            chunk.forEach(productId -> reloaded.put(productId, found.get(productId)));
+        }
+        return reloaded;
+    }
+
+    private List<String> drainChangedDuringRebuild() {
+        List<String> productIds = List.copyOf(changedDuringRebuild);
+        productIds.forEach(changedDuringRebuild::remove);
+        return productIds;
+    }
+
+    private void publish(List<String> productIds) {
+        if (!enabled) return;
+        try {
+            stringRedisTemplate.convertAndSend(PRODUCT_CHANGES_CHANNEL,
+                    NODE_ID + ":" + String.join(ID_SEPARATOR, productIds));
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish product change for {} products: {}", productIds.size(), e.getMessage());
+        }
+    }
+
+    private record Entry(String entityId, String name, String vendorId, String categoryName, Double salePrice) {
+        // Same test as contains(name, :keyword) OR contains(vendor_id, :keyword)
+        boolean matches(String keyword) {
+            return (name != null && name.contains(keyword)) || (vendorId != null && vendorId.contains(keyword));
+        }
+    }
+
+    private static final class Snapshot {
+        final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+
+        void put(Product product) {
+            Entry entry = new Entry(product.getEntityId(), product.getName(), product.getVendorId(),
+                    product.getCategoryName(), product.getSalePrice());
+            entries.put(entry.entityId(), entry);
+            grams(entry).forEach(gram -> postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet())
+                    .add(entry.entityId()));
+        }
+
+        void remove(String productId) {
+            Entry entry = entries.remove(productId);
+            if (entry == null) return;
+            grams(entry).forEach(gram -> postings.computeIfPresent(gram, (key, ids) -> {
+                ids.remove(productId);
+                return ids.isEmpty() ? null : ids;
+            }));
+        }
+
+        // Smallest posting list among the keyword's trigrams; every product for keywords too short to have one
+        Collection<String> candidates(String keyword) {
+            if (keyword.length() < GRAM_LENGTH) return entries.keySet();
+            Set<String> smallest = null;
+            for (int i = 0; i + GRAM_LENGTH <= keyword.length(); i++) {
+                Set<String> ids = postings.get(keyword.substring(i, i + GRAM_LENGTH));
+                if (ids == null) return Set.of();
+                if (smallest == null || ids.size() < smallest.size()) smallest = ids;
+            }
+            return smallest;
+        }
+
+        private static Set<String> grams(Entry entry) {
+            Set<String> grams = new HashSet<>();
+            addGrams(entry.name(), grams);
+            addGrams(entry.vendorId(), grams);
+            return grams;
+        }
+
+        private static void addGrams(String value, Set<String> grams) {
+            if (value == null) return;
+            for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+                grams.add(value.substring(i, i + GRAM_LENGTH));
+            }
+        }
+    }
+}
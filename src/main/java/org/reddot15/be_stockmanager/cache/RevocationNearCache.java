@@ -0,0 +1,96 @@
+package org.reddot15.be_stockmanager.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Node-local copy of the revoked token ids kept in Redis.
+ * A Bloom filter answers the common "not revoked" case without touching the map;
+ * the map holds the expiry of every revoked id so entries can be purged once tokens expire.
+ * The copy is only trusted while {@link #isReady()}: callers must fall back to Redis otherwise.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Component
+public class RevocationNearCache {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    // Adds share the read lock, Bloom filter rebuilds take the write lock
+    ReadWriteLock bloomLock = new ReentrantReadWriteLock();
+    long expectedInsertions;
+
+    @NonFinal
+    volatile BloomFilter bloomFilter;
+
+    @NonFinal
+    volatile boolean ready;
+
+    public RevocationNearCache(
+            MeterRegistry meterRegistry,
+            @Value("${auth.revocation.near-cache.expected-size:100000}") long expectedInsertions) {
+        this.expectedInsertions = expectedInsertions;
+        this.bloomFilter = new BloomFilter(expectedInsertions, FALSE_POSITIVE_RATE);
+        Gauge.builder("auth.revocation.near_cache.size", revokedTokens, Map::size)
+                .description("Revoked token ids held in the node-local near-cache")
+                .register(meterRegistry);
+        Gauge.builder("auth.revocation.near_cache.ready", this, cache -> cache.ready ? 1 : 0)
+                .description("1 when the near-cache is seeded and subscribed to revocation events")
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    // Record a revoked token id with its expiry (epoch millis)
+    public void add(String tokenId, long expiresAtMillis) {
+        if (expiresAtMillis <= System.currentTimeMillis()) return;
+        bloomLock.readLock().lock();
+        try {
+            revokedTokens.merge(tokenId, expiresAtMillis, Math::max);
+            bloomFilter.put(tokenId);
+        } finally {
+            bloomLock.readLock().unlock();
+        }
+    }
+
+    // Return the expiry of a revoked token id, or null when it is not revoked
+    public Long get(String tokenId) {
+        // Negative fast path
+        if (!bloomFilter.mightContain(tokenId)) return null;
+        Long expiresAtMillis = revokedTokens.get(tokenId);
+        if (expiresAtMillis == null || expiresAtMillis <= System.currentTimeMillis()) return null;
+        return expiresAtMillis;
+    }
+
+    // Drop expired ids and rebuild the Bloom filter so it does not saturate over time
+    @Scheduled(fixedDelayString = "${auth.revocation.near-cache.purge-interval:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        revokedTokens.values().removeIf(expiresAtMillis -> expiresAtMillis <= now);
+        bloomLock.writeLock().lock();
+        try {
+            BloomFilter rebuilt = new BloomFilter(
+                    Math.max(expectedInsertions, 2L * revokedTokens.size()), FALSE_POSITIVE_RATE);
+            revokedTokens.keySet().forEach(rebuilt::put);
+            bloomFilter = rebuilt;
+        } finally {
+            bloomLock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.reddot15.be_stockmanager.cache;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.entity.Permission;
+import org.reddot15.be_stockmanager.entity.Role;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
+import org.reddot15.be_stockmanager.repository.PermissionRepository;
+import org.reddot15.be_stockmanager.repository.RoleRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory role -> permission graph used to build the "scope" claim.
+ * Roles and permissions are each loaded with one partition query, the scope fragment of every role is
+ * precomputed, and the scope of each distinct role set is memoised until the next reload.
+ */
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Component
+public class RolePermissionGraph {
+    // Minimum delay between two reloads triggered by an unknown role id
+    private static final long RELOAD_ON_MISS_INTERVAL_MILLIS = 5_000;
+
+    RoleRepository roleRepository;
+    PermissionRepository permissionRepository;
+
+    @NonFinal
+    volatile Snapshot snapshot;
+
+    // Reload in the background so new roles and permission changes are picked up
+    @Scheduled(
+            initialDelayString = "${auth.role-graph.refresh-interval:300000}",
+            fixedDelayString = "${auth.role-graph.refresh-interval:300000}")
+    public void scheduledRefresh() {
+        // Nothing to refresh until the graph has been used once
+        if (snapshot == null) return;
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh role/permission graph, keeping previous snapshot: {}", e.getMessage());
+        }
+    }
+
+    public String buildScope(List<String> roleIds) {
+        // Role exists?:
+        if (CollectionUtils.isEmpty(roleIds)) return "";
+        Snapshot current = loadedSnapshot();
+        String scope = current.scopes.computeIfAbsent(List.copyOf(roleIds), current::joinScope);
+        if (scope != null) return scope;
+        // Unknown role or permission: the graph may be stale, reload once and retry
+        if (System.currentTimeMillis() - current.loadedAt >= RELOAD_ON_MISS_INTERVAL_MILLIS) {
+            current = reload();
+        }
+        return current.joinScopeOrThrow(roleIds);
+    }
+
+    private Snapshot loadedSnapshot() {
+        Snapshot current = snapshot;
+        return current != null ? current : reload();
+    }
+
+    private synchronized Snapshot reload() {
+        // Fetch both partitions in bulk
+        Map<String, String> permissionNames = permissionRepository.findAllPermissions().stream()
+                .collect(Collectors.toMap(Permission::getEntityId, Permission::getName, (a, b) -> a));
+        Map<String, Role> roles = roleRepository.findAllRoles().stream()
+                .collect(Collectors.toMap(Role::getEntityId, Function.identity(), (a, b) -> a));
+        // Precompute every role's scope fragment
+        Map<String, String> fragments = new HashMap<>();
+        Map<String, ErrorCode> brokenRoles = new HashMap<>();
+        roles.forEach((roleId, role) -> {
+            StringJoiner fragment = new StringJoiner(" ");
+            // Add role
+            fragment.add("ROLE_" + role.getName());
+            // Permission exists?:
+            if (!CollectionUtils.isEmpty(role.getPermissionIds()))
+                for (String permissionId : role.getPermissionIds()) {
+                    String permissionName = permissionNames.get(permissionId);
+                    if (permissionName == null) {
+                        brokenRoles.put(roleId, ErrorCode.PERMISSION_NOT_FOUND);
+                        return;
+                    }
+                    // Add permission
+                    fragment.add(permissionName);
+                }
+            fragments.put(roleId, fragment.toString());
+        });
+        Snapshot loaded = new Snapshot(Map.copyOf(fragments), Map.copyOf(brokenRoles), System.currentTimeMillis());
+        snapshot = loaded;
+        log.debug("Loaded role/permission graph: {} roles, {} permissions", roles.size(), permissionNames.size());
+        return loaded;
+    }
+
+    private static final class Snapshot {
+        final Map<String, String> fragments;
+        final Map<String, ErrorCode> brokenRoles;
+        final long loadedAt;
+        // Scope string per distinct role id list
+        final Map<List<String>, String> scopes = new ConcurrentHashMap<>();
+
+        Snapshot(Map<String, String> fragments, Map<String, ErrorCode> brokenRoles, long loadedAt) {
+            this.fragments = fragments;
+            this.brokenRoles = brokenRoles;
+            this.loadedAt = loadedAt;
+        }
+
+        // Returns null (not memoised) when a role cannot be resolved
+        String joinScope(List<String> roleIds) {
+            StringJoiner scope = new StringJoiner(" ");
+            for (String roleId : roleIds) {
+                String fragment = fragments.get(roleId);
+                if (fragment == null) return null;
+                scope.add(fragment);
+            }
+            return scope.toString();
+        }
+
+        String joinScopeOrThrow(List<String> roleIds) {
+            for (String roleId : roleIds) {
+                if (!fragments.containsKey(roleId))
+                    throw new AppException(brokenRoles.getOrDefault(roleId, ErrorCode.ROLE_NOT_FOUND));
+            }
+            return scopes.computeIfAbsent(List.copyOf(roleIds), this::joinScope);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.reddot15.be_stockmanager.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.entity.User;
+import org.reddot15.be_stockmanager.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Bounded cache of users keyed by email, in front of the email-gsi query.
+ * Concurrent misses for the same email share a single query. User writes must go through
+ * {@link #updatePassword(User, String)} or {@link #incrementSecurityEpoch(String)} so this node is invalidated
+ * immediately and the other nodes through the auth:user-changes channel; the TTL bounds staleness if an event
+ * is missed.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Component
+public class UserPrincipalCache implements MessageListener {
+    private static final String USER_CHANGES_CHANNEL = "auth:user-changes";
+
+    UserRepository userRepository;
+    StringRedisTemplate stringRedisTemplate;
+    Cache<String, Optional<User>> cache;
+
+    public UserPrincipalCache(
+            UserRepository userRepository,
+            StringRedisTemplate stringRedisTemplate,
+            RedisMessageListenerContainer redisMessageListenerContainer,
+            MeterRegistry meterRegistry,
+            @Value("${auth.user-cache.max-size:10000}") long maxSize,
+            @Value("${auth.user-cache.ttl:60}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "user-principal");
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(USER_CHANGES_CHANNEL));
+    }
+
+    public Optional<User> findUserByEmail(String email) {
+        // Single-flight: one query per email however many requests miss at once
+        return cache.get(email, userRepository::findUserByEmail);
+    }
+
+    // Conditional password-only write (e.g. a rehash), then invalidate locally and on every other node;
+    // the cached user is not mutated
+    public boolean updatePassword(User user, String newPassword) {
+        boolean updated = userRepository.updatePasswordIfUnchanged(
+                user.getPk(), user.getEntityId(), user.getPassword(), newPassword);
+        if (updated) {
+            evict(user.getEntityId(), user.getEmail());
+            publish(user.getEntityId(), user.getEmail());
+        }
+        return updated;
+    }
+
+    // Atomic epoch bump, invalidated like updatePassword; empty when the user does not exist
+    public Optional<User> incrementSecurityEpoch(String userId) {
+        Optional<User> updated = userRepository.incrementSecurityEpoch(userId);
+        updated.ifPresent(user -> {
+            evict(user.getEntityId(), user.getEmail());
+            publish(user.getEntityId(), user.getEmail());
+        });
+        return updated;
+    }
+
+    // Change published by any node: "<entityId>\n<email>"
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf('\n');
+        if (separator < 0) {
+            log.warn("Ignoring malformed user change event: {}", body);
+            return;
+        }
+        evict(body.substring(0, separator), body.substring(separator + 1));
+    }
+
+    private void evict(String entityId, String email) {
+        if (email != null) cache.invalidate(email);
+        // The email itself may have changed: drop any entry still pointing at this user
+        if (entityId != null)
+            cache.asMap().values().removeIf(cached ->
+                    cached.isPresent() && Objects.equals(cached.get().getEntityId(), entityId));
+    }
+
+    private void publish(String entityId, String email) {
+        try {
+            stringRedisTemplate.convertAndSend(USER_CHANGES_CHANNEL, entityId + "\n" + email);
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish user change for {}, other nodes catch up within the cache TTL: {}",
+                    entityId, e.getMessage());
+        }
+    }
+}
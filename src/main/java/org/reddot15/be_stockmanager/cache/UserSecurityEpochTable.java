@@ -0,0 +1,119 @@
+package org.reddot15.be_stockmanager.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node-local table of user id -> security epoch, so access tokens can be checked without loading the user.
+ * Only users whose epoch was ever bumped are listed (everyone else is at 0). The table is persisted in the
+ * auth:user-epochs hash and kept current through the auth:user-epoch-changes channel; it is only trusted
+ * while {@link #isReady()}, callers must fall back to the user record otherwise.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Component
+public class UserSecurityEpochTable implements MessageListener, SubscriptionListener {
+    private static final String EPOCHS_KEY = "auth:user-epochs";
+    private static final String EPOCH_CHANGES_CHANNEL = "auth:user-epoch-changes";
+
+    StringRedisTemplate stringRedisTemplate;
+    RedisMessageListenerContainer redisMessageListenerContainer;
+    Map<String, Long> epochs = new ConcurrentHashMap<>();
+
+    @NonFinal
+    volatile boolean ready;
+
+    public UserSecurityEpochTable(
+            StringRedisTemplate stringRedisTemplate,
+            RedisMessageListenerContainer redisMessageListenerContainer,
+            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(EPOCH_CHANGES_CHANNEL));
+        Gauge.builder("auth.user_epochs.size", epochs, Map::size)
+                .description("Users with a bumped security epoch held in the node-local table")
+                .register(meterRegistry);
+        Gauge.builder("auth.user_epochs.ready", this, table -> table.isReady() ? 1 : 0)
+                .description("1 when the epoch table is seeded and subscribed to epoch changes")
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        // A dropped subscription may have missed changes
+        return ready && redisMessageListenerContainer.isListening();
+    }
+
+    public long getEpoch(String userId) {
+        return epochs.getOrDefault(userId, 0L);
+    }
+
+    // Persist the new epoch and notify every node in one round trip
+    public void publish(String userId, long epoch) {
+        byte[] event = bytes(userId + ":" + epoch);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hSet(bytes(EPOCHS_KEY), bytes(userId), bytes(Long.toString(epoch)));
+            connection.publish(bytes(EPOCH_CHANGES_CHANNEL), event);
+            return null;
+        });
+        // Update this node right away
+        epochs.merge(userId, epoch, Math::max);
+    }
+
+    // Change published by any node: "<userId>:<epoch>"
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        try {
+            epochs.merge(body.substring(0, separator), Long.parseLong(body.substring(separator + 1)), Math::max);
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed security epoch event: {}", body);
+        }
+    }
+
+    // (Re)subscribed: reload the whole hash, events received meanwhile are merged
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        CompletableFuture.runAsync(() -> {
+            try {
+                try (Cursor<Map.Entry<Object, Object>> cursor = stringRedisTemplate.opsForHash()
+                        .scan(EPOCHS_KEY, ScanOptions.scanOptions().count(1000).build())) {
+                    cursor.forEachRemaining(entry -> epochs.merge(
+                            (String) entry.getKey(), Long.parseLong((String) entry.getValue()), Math::max));
+                }
+                ready = true;
+                log.info("Security epoch table ready");
+            } catch (RuntimeException e) {
+                log.warn("Failed to seed security epoch table, falling back to user lookups: {}", e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void onChannelUnsubscribed(byte[] channel, long count) {
+        ready = false;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
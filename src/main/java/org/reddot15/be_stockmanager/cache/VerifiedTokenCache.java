@@ -0,0 +1,84 @@
+package org.reddot15.be_stockmanager.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of access tokens whose signature and subject have already been verified.
+ * Entries are keyed by a SHA-256 digest of the raw token and never outlive the token's own expiry.
+ * Revocation is NOT cached here: callers must still check it on every request.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Component
+public class VerifiedTokenCache {
+    Cache<String, Jwt> cache;
+
+    public VerifiedTokenCache(
+            MeterRegistry meterRegistry,
+            @Value("${jwt.verified-cache.max-size:10000}") long maxSize,
+            @Value("${jwt.verified-cache.max-ttl:300}") long maxTtlSeconds) {
+        Duration maxTtl = Duration.ofSeconds(maxTtlSeconds);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Jwt>() {
+                    @Override
+                    public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+                        return remainingNanos(jwt, maxTtl);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+                        return remainingNanos(jwt, maxTtl);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        // Expose hit/miss/eviction metrics as cache.* {cache=verified-token}
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "verified-token");
+    }
+
+    // Get verified token, or verify it with the given function and cache the result.
+    // Exceptions thrown by the verifier are propagated and nothing is cached.
+    public Jwt get(String token, Function<String, Jwt> verifier) {
+        return cache.get(digest(token), key -> verifier.apply(token));
+    }
+
+    private static long remainingNanos(Jwt jwt, Duration maxTtl) {
+        Instant expiresAt = jwt.getExpiresAt();
+        if (expiresAt == null) return 0;
+        Duration remaining = Duration.between(Instant.now(), expiresAt);
+        if (remaining.isNegative()) return 0;
+        return (remaining.compareTo(maxTtl) < 0 ? remaining : maxTtl).toNanos();
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = messageDigest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
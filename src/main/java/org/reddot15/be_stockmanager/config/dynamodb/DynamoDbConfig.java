@@ -1,6 +1,7 @@
 package org.reddot15.be_stockmanager.config.dynamodb;
 
 
+import org.reddot15.be_stockmanager.util.PaginationTokenCodec;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,6 +12,12 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 public class DynamoDbConfig {
@@ -27,6 +34,12 @@ public class DynamoDbConfig {
     @Value("${aws.secretKey:fakeSecretKey}")
     private String awsSecretKey;
 
+    @Value("${aws.dynamodb.executor.threads:16}")
+    private int executorThreads;
+
+    @Value("${pagination.token.signing-key:${jwt.signer-key}}")
+    private String paginationTokenSigningKey;
+
     @Bean
     public DynamoDbClient dynamoDbClient() {
         return DynamoDbClient.builder()
@@ -43,4 +56,23 @@ public class DynamoDbConfig {
                 .dynamoDbClient(dynamoDbClient)
                 .build();
     }
-}
\ No newline at end of file
+
+    // Shared pool for fanned-out DynamoDB calls (shard scatter-gather, parallel batches)
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService dynamoDbExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(executorThreads, runnable -> {
+            Thread thread = new Thread(runnable, "dynamodb-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Derived rather than the raw secret, so the key signing JWTs never signs anything else
+    @Bean
+    public PaginationTokenCodec paginationTokenCodec() throws NoSuchAlgorithmException {
+        byte[] signingKey = MessageDigest.getInstance("SHA-256")
+                .digest(("pagination-token:" + paginationTokenSigningKey).getBytes(StandardCharsets.UTF_8));
+        return new PaginationTokenCodec(signingKey);
+    }
+}
@@ -0,0 +1,31 @@
+package org.reddot15.be_stockmanager.config.security;
+
+/**
+ * Permissions checked by {@link RequiresPermission}. Each constant is one bit of
+ * {@link PermissionAuthenticationToken}'s permission mask, so there can be at most 64.
+ * Names must match the permission names stored in the "Permissions" partition.
+ */
+public enum Authority {
+	CREATE_VENDOR,
+	VIEW_VENDOR,
+	UPDATE_VENDOR,
+	DELETE_VENDOR,
+	IMPORT_PRODUCT,
+	CREATE_PRODUCT,
+	VIEW_PRODUCT,
+	UPDATE_PRODUCT,
+	DELETE_PRODUCT,
+	IMPORT_INVOICES,
+	VIEW_INVOICES,
+	VIEW_FINANCIAL_STATISTIC,
+	REVOKE_USER_SESSIONS,
+	INTROSPECT_TOKENS;
+
+	static {
+		if (values().length > Long.SIZE) throw new IllegalStateException("Too many authorities for a long mask");
+	}
+
+	long mask() {
+		return 1L << ordinal();
+	}
+}
@@ -0,0 +1,59 @@
+package org.reddot15.be_stockmanager.config.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Turns a verified Jwt into a {@link PermissionAuthenticationToken}.
+ * Tokens of users sharing a role set carry the same scope string, so each distinct scope is split and
+ * decoded into its permission mask and authority list once, then reused for every request.
+ */
+public class PermissionAuthenticationConverter implements Converter<Jwt, AbstractAuthenticationToken> {
+	private static final String SCOPE_CLAIM = "scope";
+	// Distinct scopes are bounded by distinct role sets, this only guards against forged variety
+	private static final long MAX_SCOPES = 1_000;
+
+	private final Cache<String, DecodedScope> decodedScopes = Caffeine.newBuilder()
+			.maximumSize(MAX_SCOPES)
+			.build();
+
+	@Override
+	public AbstractAuthenticationToken convert(Jwt jwt) {
+		DecodedScope scope = decodedScopes.get(scopeOf(jwt), PermissionAuthenticationConverter::decode);
+		return new PermissionAuthenticationToken(jwt, scope.authorities(), scope.permissionMask());
+	}
+
+	private static String scopeOf(Jwt jwt) {
+		Object scope = jwt.getClaim(SCOPE_CLAIM);
+		if (scope instanceof Collection<?> values) return String.join(" ", values.stream().map(String::valueOf).toList());
+		return scope != null ? scope.toString() : "";
+	}
+
+	private static DecodedScope decode(String scope) {
+		long permissionMask = 0;
+		List<GrantedAuthority> authorities = new ArrayList<>();
+		for (String name : scope.split(" ")) {
+			if (name.isEmpty()) continue;
+			// Kept as authorities too (roles included) for anything still reading them
+			authorities.add(new SimpleGrantedAuthority(name));
+			try {
+				permissionMask |= Authority.valueOf(name).mask();
+			} catch (IllegalArgumentException e) {
+				// Role or permission no method checks
+			}
+		}
+		return new DecodedScope(permissionMask, List.copyOf(authorities));
+	}
+
+	private record DecodedScope(long permissionMask, List<GrantedAuthority> authorities) {
+	}
+}
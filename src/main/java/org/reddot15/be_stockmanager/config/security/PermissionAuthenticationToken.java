@@ -0,0 +1,23 @@
+package org.reddot15.be_stockmanager.config.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.util.Collection;
+
+// Jwt authentication carrying the scope claim pre-decoded into a permission mask
+public class PermissionAuthenticationToken extends JwtAuthenticationToken {
+	private static final long serialVersionUID = 1L;
+
+	private final long permissionMask;
+
+	public PermissionAuthenticationToken(Jwt jwt, Collection<? extends GrantedAuthority> authorities, long permissionMask) {
+		super(jwt, authorities, jwt.getSubject());
+		this.permissionMask = permissionMask;
+	}
+
+	public boolean hasPermission(Authority authority) {
+		return (permissionMask & authority.mask()) != 0;
+	}
+}
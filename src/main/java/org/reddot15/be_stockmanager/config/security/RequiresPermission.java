@@ -0,0 +1,11 @@
+package org.reddot15.be_stockmanager.config.security;
+
+import java.lang.annotation.*;
+
+// Caller must hold the permission; checked against the token's permission mask, no SpEL involved
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RequiresPermission {
+	Authority value();
+}
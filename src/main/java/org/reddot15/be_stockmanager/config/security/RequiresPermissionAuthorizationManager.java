@@ -0,0 +1,51 @@
+package org.reddot15.be_stockmanager.config.security;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.core.Authentication;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Grants a @RequiresPermission method when the caller's permission mask holds the required bit
+public class RequiresPermissionAuthorizationManager implements AuthorizationManager<MethodInvocation> {
+	private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+	private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+	// Required permission per method, resolved once
+	private final Map<Method, Authority> requiredPermissions = new ConcurrentHashMap<>();
+
+	@Override
+	public AuthorizationResult authorize(Supplier<Authentication> authentication, MethodInvocation invocation) {
+		return decide(authentication, invocation);
+	}
+
+	// Still abstract in AuthorizationManager, kept for callers of the deprecated API
+	@Deprecated
+	@Override
+	public AuthorizationDecision check(Supplier<Authentication> authentication, MethodInvocation invocation) {
+		return decide(authentication, invocation);
+	}
+
+	private AuthorizationDecision decide(Supplier<Authentication> authentication, MethodInvocation invocation) {
+		Authority required = requiredPermissions.computeIfAbsent(invocation.getMethod(),
+				method -> resolveRequiredPermission(method, invocation.getThis()));
+		return authentication.get() instanceof PermissionAuthenticationToken token && token.hasPermission(required)
+				? GRANTED
+				: DENIED;
+	}
+
+	private static Authority resolveRequiredPermission(Method method, Object target) {
+		Method specificMethod = target != null ? AopUtils.getMostSpecificMethod(method, target.getClass()) : method;
+		RequiresPermission annotation = AnnotatedElementUtils.findMergedAnnotation(specificMethod, RequiresPermission.class);
+		if (annotation == null) annotation = AnnotatedElementUtils.findMergedAnnotation(method, RequiresPermission.class);
+		return Objects.requireNonNull(annotation, () -> "No @RequiresPermission on " + method).value();
+	}
+}
@@ -6,6 +6,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.reddot15.be_stockmanager.dto.request.AuthenticationRequest;
 import org.reddot15.be_stockmanager.dto.request.RefreshRequest;
+import org.reddot15.be_stockmanager.dto.request.TokenIntrospectionRequest;
 import org.reddot15.be_stockmanager.helper.ResponseObject;
 import org.reddot15.be_stockmanager.service.AuthenticationService;
 import org.springframework.http.HttpStatus;
@@ -36,9 +37,20 @@ public class AuthenticationController {
 		return buildResponse(HttpStatus.OK, "Token valid.", null);
 	}
 
+	@PostMapping("/tokens/introspect")
+	public ResponseEntity<ResponseObject> introspectTokens(@Valid @RequestBody TokenIntrospectionRequest request) {
+		return buildResponse(HttpStatus.OK, "Introspect tokens successfully.", authenticationService.introspect(request));
+	}
+
 	@DeleteMapping("/tokens")
 	public ResponseEntity<ResponseObject> logout() {
 		authenticationService.logout();
 		return buildResponse(HttpStatus.OK, "Log out successfully.", null);
 	}
+
+	@DeleteMapping("/users/{userId}/tokens")
+	public ResponseEntity<ResponseObject> revokeUserSessions(@PathVariable String userId) {
+		authenticationService.revokeUserSessions(userId);
+		return buildResponse(HttpStatus.OK, "Revoke user sessions successfully.", null);
+	}
 }
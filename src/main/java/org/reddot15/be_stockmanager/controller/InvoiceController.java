@@ -3,15 +3,16 @@ package org.reddot15.be_stockmanager.controller;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
-import org.reddot15.be_stockmanager.dto.response.InvoiceResponse;
 import org.reddot15.be_stockmanager.helper.ResponseObject;
 import org.reddot15.be_stockmanager.service.InvoiceService;
+import org.reddot15.be_stockmanager.util.TextExportUtil;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
 
 import static org.reddot15.be_stockmanager.helper.ResponseBuilder.buildResponse;
 
@@ -24,10 +25,12 @@ public class InvoiceController {
 
     @PostMapping("")
     public ResponseEntity<ResponseObject> importInvoicesFromCSV(@RequestParam("file") MultipartFile file) {
-        List<InvoiceResponse> importedInvoices = invoiceService.importInvoicesFromCSV(file);
-        return buildResponse(HttpStatus.OK,
-                "CSV file uploaded and " + importedInvoices.size() + " invoices imported successfully.",
-                importedInvoices);
+        return buildResponse(HttpStatus.ACCEPTED, "CSV file accepted, import job queued.", invoiceService.importInvoicesFromCSV(file));
+    }
+
+    @GetMapping(value = "/import/{jobId}")
+    public ResponseEntity<ResponseObject> getImportJob(@PathVariable String jobId) {
+        return buildResponse(HttpStatus.OK, "Get import job successfully.", invoiceService.getImportJob(jobId));
     }
 
     @GetMapping(value = "")
@@ -37,6 +40,15 @@ public class InvoiceController {
         return buildResponse(HttpStatus.OK, "Get invoices successfully.", invoiceService.getInvoices(limit, nextPageToken));
     }
 
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportInvoices(
+            @RequestParam(name = "format", required = false) String format,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        TextExportUtil.Format exportFormat = TextExportUtil.Format.fromParam(format);
+        boolean gzip = TextExportUtil.acceptsGzip(acceptEncoding);
+        return TextExportUtil.toResponse("invoices", exportFormat, gzip, invoiceService.exportInvoices(exportFormat, gzip));
+    }
+
     @GetMapping(value = "/{invoiceId}")
     public ResponseEntity<ResponseObject> getById(@PathVariable String invoiceId) {
         return buildResponse(HttpStatus.OK, "Get products successfully.", invoiceService.getById(invoiceId));
@@ -7,22 +7,16 @@ import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.reddot15.be_stockmanager.dto.request.ProductCreateRequest;
 import org.reddot15.be_stockmanager.dto.request.ProductUpdateRequest;
-import org.reddot15.be_stockmanager.dto.response.ProductResponse;
 import org.reddot15.be_stockmanager.helper.ResponseObject;
 import org.reddot15.be_stockmanager.service.ProductService;
-import org.springframework.core.io.InputStreamResource;
+import org.reddot15.be_stockmanager.util.TextExportUtil;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.List;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import static org.reddot15.be_stockmanager.helper.ResponseBuilder.buildResponse;
 
@@ -36,10 +30,12 @@ public class ProductController {
 
 	@PostMapping(value = "/import")
 	public ResponseEntity<ResponseObject> importProductFromCSV(@RequestParam("file") MultipartFile file) {
-		List<ProductResponse> importedProducts = productService.importProductFromCSV(file);
-		return buildResponse(HttpStatus.OK,
-				"CSV file uploaded and " + importedProducts.size() + " products imported successfully.",
-				importedProducts);
+		return buildResponse(HttpStatus.ACCEPTED, "CSV file accepted, import job queued.", productService.importProductFromCSV(file));
+	}
+
+	@GetMapping(value = "/import/{jobId}")
+	public ResponseEntity<ResponseObject> getImportJob(@PathVariable String jobId) {
+		return buildResponse(HttpStatus.OK, "Get import job successfully.", productService.getImportJob(jobId));
 	}
 
 	@PostMapping(value = "")
@@ -68,50 +64,41 @@ public class ProductController {
 	}
 
 	@GetMapping("/download-excel")
-	public ResponseEntity<byte[]> downloadProductsExcel(
+	public ResponseEntity<StreamingResponseBody> downloadProductsExcel(
 			@RequestParam(name = "keyword", required = false) String keyword,
 			@RequestParam(name = "categoryName", required = false) String categoryName,
 			@RequestParam(name = "minPrice", required = false) Double minPrice,
-			@RequestParam(name = "maxPrice", required = false) Double maxPrice) {
-
-		Path tempFile = null;
-		try {
-			// 1. Call the service to generate the file on disk
-			tempFile = productService.exportProductsToExcel(keyword, categoryName, minPrice, maxPrice);
-
-			// 2. Prepare the file for streaming
-			InputStream inputStream = Files.newInputStream(tempFile);
-			InputStreamResource resource = new InputStreamResource(inputStream);
+			@RequestParam(name = "maxPrice", required = false) Double maxPrice,
+			@RequestParam(name = "width", required = false) String width) {
+		// 1. Call the service to prepare the export; the workbook is written while the response streams
+		StreamingResponseBody body = productService.exportProductsToExcel(keyword, categoryName, minPrice, maxPrice, width);
 
-			// 3. Set HTTP headers for the file download response
-			HttpHeaders headers = new HttpHeaders();
-			headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=products.xlsx");
-			headers.add(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate");
-			headers.add(HttpHeaders.PRAGMA, "no-cache");
-			headers.add(HttpHeaders.EXPIRES, "0");
+		// 2. Set HTTP headers for the file download response
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=products.xlsx");
+		headers.add(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate");
+		headers.add(HttpHeaders.PRAGMA, "no-cache");
+		headers.add(HttpHeaders.EXPIRES, "0");
 
-			// 4. Return the ResponseEntity to start the download
-			return ResponseEntity.ok()
-					.headers(headers)
-					.contentLength(Files.size(tempFile))
-					.contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-					.body(resource.getContentAsByteArray());
+		// 3. Return the ResponseEntity to start the download (chunked, the length is not known upfront)
+		return ResponseEntity.ok()
+				.headers(headers)
+				.contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+				.body(body);
+	}
 
-		} catch (IOException e) {
-			// Handle exceptions, e.g., file not found after creation
-			log.error("Error while preparing file for download", e);
-			throw new RuntimeException("Error occurred while exporting data.", e);
-		} finally {
-			// 5. CRUCIAL: Delete the temporary file from the server disk after streaming.
-			// The response will be sent before this `finally` block is executed.
-			if (tempFile != null) {
-				try {
-					Files.deleteIfExists(tempFile);
-				} catch (IOException e) {
-					log.error("Failed to delete temporary export file: " + tempFile, e);
-				}
-			}
-		}
+	@GetMapping("/export")
+	public ResponseEntity<StreamingResponseBody> exportProducts(
+			@RequestParam(name = "format", required = false) String format,
+			@RequestParam(name = "keyword", required = false) String keyword,
+			@RequestParam(name = "categoryName", required = false) String categoryName,
+			@RequestParam(name = "minPrice", required = false) Double minPrice,
+			@RequestParam(name = "maxPrice", required = false) Double maxPrice,
+			@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+		TextExportUtil.Format exportFormat = TextExportUtil.Format.fromParam(format);
+		boolean gzip = TextExportUtil.acceptsGzip(acceptEncoding);
+		return TextExportUtil.toResponse("products", exportFormat, gzip,
+				productService.exportProducts(exportFormat, gzip, keyword, categoryName, minPrice, maxPrice));
 	}
 
 	@PutMapping(value = "/{productId}")
@@ -8,9 +8,12 @@ import org.reddot15.be_stockmanager.dto.request.VendorCreateRequest;
 import org.reddot15.be_stockmanager.dto.request.VendorUpdateRequest;
 import org.reddot15.be_stockmanager.helper.ResponseObject;
 import org.reddot15.be_stockmanager.service.VendorService;
+import org.reddot15.be_stockmanager.util.TextExportUtil;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import static org.reddot15.be_stockmanager.helper.ResponseBuilder.buildResponse;
 
@@ -33,6 +36,15 @@ public class VendorController {
 		return buildResponse(HttpStatus.OK, "Get vendors successfully.", vendorService.getVendors(nextPageToken, limit));
 	}
 
+	@GetMapping("/export")
+	public ResponseEntity<StreamingResponseBody> exportVendors(
+			@RequestParam(name = "format", required = false) String format,
+			@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+		TextExportUtil.Format exportFormat = TextExportUtil.Format.fromParam(format);
+		boolean gzip = TextExportUtil.acceptsGzip(acceptEncoding);
+		return TextExportUtil.toResponse("vendors", exportFormat, gzip, vendorService.exportVendors(exportFormat, gzip));
+	}
+
 	@PutMapping(value = "/{vendorId}")
 	public ResponseEntity<ResponseObject> update(@PathVariable String vendorId, @Valid @RequestBody VendorUpdateRequest request) {
 		return buildResponse(HttpStatus.OK, "Update vendor successfully.", vendorService.update(vendorId, request));
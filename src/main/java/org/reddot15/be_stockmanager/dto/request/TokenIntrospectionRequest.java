@@ -0,0 +1,21 @@
+package org.reddot15.be_stockmanager.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class TokenIntrospectionRequest {
+	@NotEmpty(message = "Tokens are required.")
+	@Size(max = 100, message = "At most 100 tokens can be introspected at once.")
+	List<@NotBlank(message = "Token must not be blank.") String> tokens;
+}
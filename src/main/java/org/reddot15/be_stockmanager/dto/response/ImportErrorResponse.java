@@ -0,0 +1,19 @@
+package org.reddot15.be_stockmanager.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ImportErrorResponse {
+	// 1-based position of the record in the file, header excluded
+	Long recordNumber;
+
+	String entityId;
+
+	String message;
+}
@@ -0,0 +1,55 @@
+package org.reddot15.be_stockmanager.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ImportJobResponse {
+	String jobId;
+
+	String type;
+
+	// QUEUED, RUNNING, SUCCEEDED, FAILED or INTERRUPTED
+	String status;
+
+	String fileName;
+
+	// Data records read so far, header excluded
+	Long recordsProcessed;
+
+	Long imported;
+
+	Long rejected;
+
+	Long failed;
+
+	Double rowsPerSecond;
+
+	// Share of the file read, from 0 to 1
+	Double progress;
+
+	// Estimated from the read rate, null when unknown or finished
+	Long etaSeconds;
+
+	Double consumedCapacityUnits;
+
+	String message;
+
+	// First errors only, see errorsTruncated
+	List<ImportErrorResponse> errors;
+
+	Boolean errorsTruncated;
+
+	String createdAt;
+
+	String startedAt;
+
+	String finishedAt;
+}
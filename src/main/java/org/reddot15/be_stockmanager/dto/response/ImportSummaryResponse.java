@@ -0,0 +1,42 @@
+package org.reddot15.be_stockmanager.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ImportSummaryResponse {
+	// Data records read, header excluded
+	Long totalRecords;
+
+	Long imported;
+
+	// Records that could not be mapped or did not pass validation
+	Long rejected;
+
+	// Valid records whose write failed
+	Long failed;
+
+	Integer batches;
+
+	Double consumedCapacityUnits;
+
+	Long parseMillis;
+
+	Long validateMillis;
+
+	Long writeMillis;
+
+	Long totalMillis;
+
+	// First errors only, see errorsTruncated
+	List<ImportErrorResponse> errors;
+
+	Boolean errorsTruncated;
+}
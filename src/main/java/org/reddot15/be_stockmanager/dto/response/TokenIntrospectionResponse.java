@@ -0,0 +1,24 @@
+package org.reddot15.be_stockmanager.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Map;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TokenIntrospectionResponse {
+	Boolean active;
+
+	// Only set for active tokens; timestamps in epoch seconds
+	Map<String, Object> claims;
+
+	// Seconds until the token expires
+	Long expiresIn;
+}
@@ -0,0 +1,105 @@
+package org.reddot15.be_stockmanager.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.SuperBuilder;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+
+import java.util.List;
+
+// Background CSV import: pk "ImportJobs", entity_id the job id
+@Getter
+@Setter
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@SuperBuilder
+@DynamoDbBean
+public class ImportJob extends BaseMasterDataItem {
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, INTERRUPTED
+    }
+
+    String type; // "products" or "invoices"
+    Status status;
+    String fileName;
+    Long fileBytes;
+    Long bytesRead;
+    Long recordsProcessed;
+    Long imported;
+    Long rejected;
+    Long failed;
+    Double consumedCapacityUnits;
+    String message;
+    List<ImportJobError> errors;
+    Boolean errorsTruncated;
+    String nodeId; // Node running the job
+    String createdAt;
+    String startedAt;
+    String updatedAt; // Heartbeat while queued or running
+    String finishedAt;
+    Long expiresAt; // Epoch seconds, DynamoDB TTL attribute
+
+    @DynamoDbAttribute("file_name")
+    public String getFileName() {
+        return fileName;
+    }
+
+    @DynamoDbAttribute("file_bytes")
+    public Long getFileBytes() {
+        return fileBytes;
+    }
+
+    @DynamoDbAttribute("bytes_read")
+    public Long getBytesRead() {
+        return bytesRead;
+    }
+
+    @DynamoDbAttribute("records_processed")
+    public Long getRecordsProcessed() {
+        return recordsProcessed;
+    }
+
+    @DynamoDbAttribute("consumed_capacity_units")
+    public Double getConsumedCapacityUnits() {
+        return consumedCapacityUnits;
+    }
+
+    @DynamoDbAttribute("errors_truncated")
+    public Boolean getErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    @DynamoDbAttribute("node_id")
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @DynamoDbAttribute("created_at")
+    public String getCreatedAt() {
+        return createdAt;
+    }
+
+    @DynamoDbAttribute("started_at")
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    @DynamoDbAttribute("updated_at")
+    public String getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @DynamoDbAttribute("finished_at")
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    @DynamoDbAttribute("expires_at")
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,29 @@
+package org.reddot15.be_stockmanager.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+@DynamoDbBean
+public class ImportJobError {
+    Long recordNumber;
+    String entityId;
+    String message;
+
+    @DynamoDbAttribute(value = "record_number")
+    public Long getRecordNumber() {
+        return recordNumber;
+    }
+
+    @DynamoDbAttribute(value = "entity_id")
+    public String getEntityId() {
+        return entityId;
+    }
+}
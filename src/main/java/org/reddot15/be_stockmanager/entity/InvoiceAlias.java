@@ -0,0 +1,26 @@
+package org.reddot15.be_stockmanager.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.SuperBuilder;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+
+// Pre-bucketing id of a backfilled invoice: pk "InvoiceAliases", entity_id the old id
+@Getter
+@Setter
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@SuperBuilder
+@DynamoDbBean
+public class InvoiceAlias extends BaseMasterDataItem {
+    String invoiceId; // Bucket-prefixed id the invoice was moved to
+
+    @DynamoDbAttribute("invoice_id")
+    public String getInvoiceId() {
+        return invoiceId;
+    }
+}
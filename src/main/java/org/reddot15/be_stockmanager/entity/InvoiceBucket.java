@@ -0,0 +1,19 @@
+package org.reddot15.be_stockmanager.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.SuperBuilder;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+
+// Registry entry of an invoice partition: pk "InvoiceBuckets", entity_id the bucket's partition key
+@Getter
+@Setter
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@SuperBuilder
+@DynamoDbBean
+public class InvoiceBucket extends BaseMasterDataItem {
+}
@@ -0,0 +1,20 @@
+package org.reddot15.be_stockmanager.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.SuperBuilder;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+
+// Stock counter of a best-selling product: pk "ProductStock#<productId>#<shard>", entity_id the product id
+@Getter
+@Setter
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@SuperBuilder
+@DynamoDbBean
+public class ProductStockShard extends BaseMasterDataItem {
+    Integer amount;
+}
@@ -23,6 +23,8 @@ public class User extends BaseMasterDataItem {
     String email;
     String password;
     List<String> roleIds;
+    // Bumped to invalidate every token issued before; tokens carry the value they were issued with
+    Long securityEpoch;
 
     @DynamoDbSecondaryPartitionKey(indexNames = "email-gsi")
     public String getEmail() {
@@ -33,4 +35,9 @@ public class User extends BaseMasterDataItem {
     public List<String> getRoleIds() {
         return roleIds;
     }
+
+    @DynamoDbAttribute("security_epoch")
+    public Long getSecurityEpoch() {
+        return securityEpoch;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package org.reddot15.be_stockmanager.entity.batch;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@Builder
+public class BatchWriteReport {
+    // Items written (put or deleted)
+    private int written;
+    // Chunks that could not be written completely
+    private List<ChunkFailure> failures;
+    // Write capacity consumed, retries included
+    private double consumedCapacityUnits;
+    // BatchWriteItem calls repeated for UnprocessedItems
+    private int retries;
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    @Getter
+    @Builder
+    public static class ChunkFailure {
+        // Position of the chunk in the request, 0-based
+        private int chunkIndex;
+        // entity_id of the items left unwritten
+        private List<String> entityIds;
+        private String message;
+    }
+}
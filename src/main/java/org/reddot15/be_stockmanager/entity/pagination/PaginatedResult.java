@@ -7,6 +7,7 @@ import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 @Getter
 @Setter
@@ -14,4 +15,8 @@ import java.util.Map;
 public class PaginatedResult<T> {
     private List<T> items;
     private Map<String, AttributeValue> lastEvaluatedKey;
+    // Items DynamoDB evaluated before filtering, when known
+    private Integer scannedCount;
+    // Start key resuming right after one of the items, so a caller may return fewer items than it got
+    private Function<T, Map<String, AttributeValue>> startKeyAfter;
 }
\ No newline at end of file
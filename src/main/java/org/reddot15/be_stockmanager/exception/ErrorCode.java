@@ -12,6 +12,7 @@ import org.springframework.http.HttpStatus;
 public enum ErrorCode {
     // General
     UNCATEGORIZED(HttpStatus.BAD_REQUEST, 70,"Bad request."),
+    SERVICE_BUSY(HttpStatus.SERVICE_UNAVAILABLE, 73,"Server is busy, please retry later."),
     // Player
     USER_DUPLICATE(HttpStatus.CONFLICT, 69,"User already exists."),
     USER_NOT_FOUND(HttpStatus.NOT_FOUND, 64,"User not found."),
@@ -45,6 +46,8 @@ public enum ErrorCode {
     FILE_CREATION_FAILED(HttpStatus.BAD_REQUEST, 60, "Fail to create Excel file."),
     // Record
     INVALID_RECORD(HttpStatus.BAD_REQUEST, 60, "Invalid record."),
+    // Import job
+    IMPORT_JOB_NOT_FOUND(HttpStatus.NOT_FOUND, 64, "Import job not found."),
     //
     UNSUPPORT_DYNAMODB_TYPE(HttpStatus.BAD_REQUEST, 60, "Unsupported DynamoDB type."),
     ;
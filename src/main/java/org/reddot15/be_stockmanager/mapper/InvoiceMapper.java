@@ -11,6 +11,7 @@ import org.reddot15.be_stockmanager.entity.Invoice;
 import org.reddot15.be_stockmanager.entity.SaleItem;
 import org.reddot15.be_stockmanager.util.TimeValidator;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -23,7 +24,7 @@ public interface InvoiceMapper {
     default Invoice toInvoice(CSVRecord csvRecord) throws JsonProcessingException {
         return Invoice.builder()
                 .pk("Invoices")
-                .entityId(UUID.randomUUID().toString())
+                .entityId(invoiceIdOf(csvRecord))
                 .createdAt(TimeValidator.validateDateTime(csvRecord.get("created_at")))
                 .updatedAt(TimeValidator.validateDateTime(csvRecord.get("updated_at")))
                 .total(Double.parseDouble(csvRecord.get("total")))
@@ -32,6 +33,20 @@ public interface InvoiceMapper {
                 .build();
     };
 
+    // Same id on every import of the record, so a re-import hits the duplicate check instead of selling twice:
+    // the exported entity_id when present, else a name-based UUID of the invoice fields
+    private String invoiceIdOf(CSVRecord csvRecord) {
+        if (csvRecord.isMapped("entity_id") && !csvRecord.get("entity_id").isBlank())
+            return csvRecord.get("entity_id");
+        String fields = String.join("\u0000",
+                csvRecord.get("created_at"),
+                csvRecord.get("updated_at"),
+                csvRecord.get("total"),
+                csvRecord.get("tax"),
+                csvRecord.get("sales"));
+        return UUID.nameUUIDFromBytes(fields.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
     private List<SaleItem> parseSaleItemsJson(String salesJsonString) throws JsonProcessingException {
         // Null exception
         if (salesJsonString == null || salesJsonString.trim().isEmpty()) {
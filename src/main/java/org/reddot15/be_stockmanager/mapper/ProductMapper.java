@@ -8,8 +8,6 @@ import org.reddot15.be_stockmanager.dto.request.ProductCreateRequest;
 import org.reddot15.be_stockmanager.dto.request.ProductUpdateRequest;
 import org.reddot15.be_stockmanager.dto.response.ProductResponse;
 import org.reddot15.be_stockmanager.entity.Product;
-import org.reddot15.be_stockmanager.exception.AppException;
-import org.reddot15.be_stockmanager.exception.ErrorCode;
 import org.reddot15.be_stockmanager.util.TimeValidator;
 
 @Mapper(componentModel = "spring", nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
@@ -23,19 +21,6 @@ public interface ProductMapper {
     // Update
     void updateEntity(@MappingTarget Product entity, ProductUpdateRequest request);
 
-    default void updateExistingProduct(Product existingProduct, Product importedProduct) {
-        // Product information mismatch exception
-        if (!existingProduct.equals(importedProduct)) {
-            throw new AppException(ErrorCode.PRODUCT_MISMATCH);
-        }
-        // Calculate up product amount
-        existingProduct.setAmount(existingProduct.getAmount() + importedProduct.getAmount());
-        // Update earliest expiry time
-        if (importedProduct.getEarliestExpiry().compareTo(existingProduct.getEarliestExpiry()) < 0) {
-            existingProduct.setEarliestExpiry(importedProduct.getEarliestExpiry());
-        }
-    }
-
     default Product toProduct(CSVRecord csvRecord) {
         return Product.builder()
                 .pk("Products")
@@ -1,22 +1,71 @@
 package org.reddot15.be_stockmanager.repository;
 
 import org.reddot15.be_stockmanager.entity.BaseMasterDataItem;
+import org.reddot15.be_stockmanager.entity.batch.BatchWriteReport;
 import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
 import software.amazon.awssdk.core.pagination.sync.SdkIterable;
 import software.amazon.awssdk.enhanced.dynamodb.*;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPage;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public abstract class BaseMasterDataRepository<T extends BaseMasterDataItem> {
 
+    // Max keys per BatchGetItem request
+    protected static final int BATCH_GET_SIZE = 100;
+    // Max items per BatchWriteItem request
+    protected static final int BATCH_WRITE_SIZE = 25;
+    // BatchWriteItem chunks of one call in flight at once
+    private static final int BATCH_WRITE_PARALLELISM = 8;
+    // UnprocessedKeys/UnprocessedItems are retried with exponential backoff and full jitter
+    private static final int BATCH_MAX_RETRIES = 8;
+    private static final long BATCH_BACKOFF_BASE_MILLIS = 25;
+    private static final long BATCH_BACKOFF_MAX_MILLIS = 1000;
+
+    protected final DynamoDbEnhancedClient enhancedClient;
+    // Low-level client for batch writes, which report consumed capacity; null when the repository does none
+    protected final DynamoDbClient dynamoDbClient;
     protected final DynamoDbTable<T> table;
+    protected final Class<T> itemClass;
+    // Runs batch chunks concurrently; null runs them one after another
+    protected final ExecutorService dynamoDbExecutor;
 
     protected BaseMasterDataRepository(DynamoDbEnhancedClient enhancedClient, Class<T> clazz) {
+        this(enhancedClient, null, clazz, null);
+    }
+
+    protected BaseMasterDataRepository(
+            DynamoDbEnhancedClient enhancedClient,
+            DynamoDbClient dynamoDbClient,
+            Class<T> clazz,
+            ExecutorService dynamoDbExecutor) {
+        this.enhancedClient = enhancedClient;
+        this.dynamoDbClient = dynamoDbClient;
         this.table = enhancedClient.table("MasterData", TableSchema.fromBean(clazz));
+        this.itemClass = clazz;
+        this.dynamoDbExecutor = dynamoDbExecutor;
     }
 
     public T save(T item) {
@@ -24,6 +73,26 @@ public abstract class BaseMasterDataRepository<T extends BaseMasterDataItem> {
         return item;
     }
 
+    // Put every item with BatchWriteItem; failed chunks are reported, not thrown
+    public BatchWriteReport saveAll(List<T> items) {
+        return batchWrite(items.stream()
+                .map(item -> WriteRequest.builder()
+                        .putRequest(PutRequest.builder().item(table.tableSchema().itemToMap(item, true)).build())
+                        .build())
+                .toList());
+    }
+
+    // Delete every key with BatchWriteItem; failed chunks are reported, not thrown
+    public BatchWriteReport deleteAll(List<Key> keys) {
+        return batchWrite(keys.stream()
+                .map(key -> WriteRequest.builder()
+                        .deleteRequest(DeleteRequest.builder()
+                                .key(key.keyMap(table.tableSchema(), TableMetadata.primaryIndexName()))
+                                .build())
+                        .build())
+                .toList());
+    }
+
     public Optional<T> findByPkAndEntityId(String pkValue, String entityIdValue) {
         Key key = Key.builder()
                 .partitionValue(pkValue)
@@ -32,6 +101,203 @@ public abstract class BaseMasterDataRepository<T extends BaseMasterDataItem> {
         return Optional.ofNullable(table.getItem(key));
     }
 
+    public List<T> findAllByPk(String pkValue) {
+        // Query the whole partition, following every page
+        return table.query(QueryConditional.keyEqualTo(Key.builder().partitionValue(pkValue).build()))
+                .items()
+                .stream()
+                .toList();
+    }
+
+    // Items by entity_id, read with BatchGetItem under the partition partitionOf gives each id; missing ids are absent
+    public Map<String, T> batchFindByPkAndEntityIds(Collection<String> entityIds, Function<String, String> partitionOf) {
+        return batchFindByPkAndEntityIds(entityIds, partitionOf, false);
+    }
+
+    // consistentRead sees every write acknowledged before the call, at twice the read capacity
+    public Map<String, T> batchFindByPkAndEntityIds(
+            Collection<String> entityIds,
+            Function<String, String> partitionOf,
+            boolean consistentRead) {
+        return batchFindByKeys(entityIds.stream()
+                .distinct()
+                .map(entityId -> Key.builder().partitionValue(partitionOf.apply(entityId)).sortValue(entityId).build())
+                .toList(), consistentRead)
+                .stream()
+                .collect(Collectors.toMap(BaseMasterDataItem::getEntityId, Function.identity(), (first, second) -> first));
+    }
+
+    // Read many items by key with BatchGetItem, chunks running concurrently; missing items are skipped,
+    // order is not preserved
+    public List<T> batchFindByKeys(List<Key> keys) {
+        return batchFindByKeys(keys, false);
+    }
+
+    public List<T> batchFindByKeys(List<Key> keys, boolean consistentRead) {
+        List<List<Key>> chunks = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += BATCH_GET_SIZE) {
+            chunks.add(keys.subList(from, Math.min(from + BATCH_GET_SIZE, keys.size())));
+        }
+        // A single chunk needs no hand-off
+        if (dynamoDbExecutor == null || chunks.size() == 1) {
+            List<T> items = new ArrayList<>(keys.size());
+            chunks.forEach(chunk -> items.addAll(batchGetChunk(chunk, consistentRead)));
+            return items;
+        }
+        List<CompletableFuture<List<T>>> reads = chunks.stream()
+                .map(chunk -> CompletableFuture.supplyAsync(() -> batchGetChunk(chunk, consistentRead), dynamoDbExecutor))
+                .toList();
+        List<T> items = new ArrayList<>(keys.size());
+        for (CompletableFuture<List<T>> read : reads) {
+            try {
+                items.addAll(read.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                throw e;
+            }
+        }
+        return items;
+    }
+
+    // One BatchGetItem, then its UnprocessedKeys again until none are left
+    private List<T> batchGetChunk(List<Key> keys, boolean consistentRead) {
+        List<T> items = new ArrayList<>(keys.size());
+        List<Key> pending = keys;
+        for (int attempt = 0; !pending.isEmpty(); attempt++) {
+            if (attempt > 0) backoff(attempt);
+            ReadBatch.Builder<T> readBatch = ReadBatch.builder(itemClass).mappedTableResource(table);
+            pending.forEach(key -> readBatch.addGetItem(GetItemEnhancedRequest.builder()
+                    .key(key)
+                    .consistentRead(consistentRead)
+                    .build()));
+            // Only the first page: the SDK would resubmit unprocessed keys right away
+            BatchGetResultPage page = enhancedClient.batchGetItem(request -> request.addReadBatch(readBatch.build()))
+                    .iterator()
+                    .next();
+            page.resultsForTable(table).forEach(items::add);
+            pending = page.unprocessedKeysForTable(table);
+        }
+        return items;
+    }
+
+    private BatchWriteReport batchWrite(List<WriteRequest> writeRequests) {
+        if (dynamoDbClient == null)
+            throw new IllegalStateException(getClass().getSimpleName() + " is not set up for batch writes");
+        // DynamoDB rejects a batch touching one key twice: the last write of a key wins
+        TableMetadata metadata = table.tableSchema().tableMetadata();
+        Map<Map<String, AttributeValue>, WriteRequest> byKey = new LinkedHashMap<>();
+        for (WriteRequest request : writeRequests) {
+            Map<String, AttributeValue> attributes = request.putRequest() != null
+                    ? request.putRequest().item()
+                    : request.deleteRequest().key();
+            Map<String, AttributeValue> key = new HashMap<>();
+            metadata.primaryKeys().forEach(name -> key.put(name, attributes.get(name)));
+            byKey.remove(key);
+            byKey.put(key, request);
+        }
+        List<WriteRequest> requests = new ArrayList<>(byKey.values());
+
+        List<List<WriteRequest>> chunks = new ArrayList<>();
+        for (int from = 0; from < requests.size(); from += BATCH_WRITE_SIZE) {
+            chunks.add(requests.subList(from, Math.min(from + BATCH_WRITE_SIZE, requests.size())));
+        }
+        List<ChunkOutcome> outcomes = new ArrayList<>(chunks.size());
+        if (dynamoDbExecutor == null || chunks.size() == 1) {
+            for (int index = 0; index < chunks.size(); index++) {
+                outcomes.add(batchWriteChunk(index, chunks.get(index)));
+            }
+        } else {
+            // Dispatch in a sliding window so one large write cannot fill the shared pool's queue
+            Semaphore window = new Semaphore(BATCH_WRITE_PARALLELISM);
+            List<CompletableFuture<ChunkOutcome>> writes = new ArrayList<>(chunks.size());
+            for (int index = 0; index < chunks.size(); index++) {
+                int chunkIndex = index;
+                window.acquireUninterruptibly();
+                writes.add(CompletableFuture
+                        .supplyAsync(() -> batchWriteChunk(chunkIndex, chunks.get(chunkIndex)), dynamoDbExecutor)
+                        .whenComplete((outcome, e) -> window.release()));
+            }
+            writes.forEach(write -> outcomes.add(write.join()));
+        }
+
+        // Sum up
+        List<BatchWriteReport.ChunkFailure> failures = outcomes.stream()
+                .map(ChunkOutcome::failure)
+                .filter(Objects::nonNull)
+                .toList();
+        return BatchWriteReport.builder()
+                .written(requests.size() - failures.stream().mapToInt(failure -> failure.getEntityIds().size()).sum())
+                .failures(failures)
+                .consumedCapacityUnits(outcomes.stream().mapToDouble(ChunkOutcome::consumedCapacityUnits).sum())
+                .retries(outcomes.stream().mapToInt(ChunkOutcome::retries).sum())
+                .build();
+    }
+
+    private record ChunkOutcome(BatchWriteReport.ChunkFailure failure, double consumedCapacityUnits, int retries) {}
+
+    // One BatchWriteItem, then its UnprocessedItems again until none are left or retries run out
+    private ChunkOutcome batchWriteChunk(int chunkIndex, List<WriteRequest> chunk) {
+        List<WriteRequest> pending = chunk;
+        double consumedCapacityUnits = 0;
+        int attempt = 0;
+        try {
+            while (!pending.isEmpty()) {
+                if (attempt > 0) {
+                    if (attempt > BATCH_MAX_RETRIES) break;
+                    sleepBeforeRetry(attempt);
+                }
+                Map<String, List<WriteRequest>> requestItems = Map.of(table.tableName(), pending);
+                BatchWriteItemResponse response = dynamoDbClient.batchWriteItem(request -> request
+                        .requestItems(requestItems)
+                        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+                if (response.hasConsumedCapacity()) {
+                    consumedCapacityUnits += response.consumedCapacity().stream()
+                            .map(ConsumedCapacity::capacityUnits)
+                            .filter(Objects::nonNull)
+                            .mapToDouble(Double::doubleValue)
+                            .sum();
+                }
+                pending = response.unprocessedItems().getOrDefault(table.tableName(), List.of());
+                attempt++;
+            }
+        } catch (RuntimeException e) {
+            return new ChunkOutcome(chunkFailure(chunkIndex, pending, e.getMessage()), consumedCapacityUnits, Math.max(attempt - 1, 0));
+        }
+        BatchWriteReport.ChunkFailure failure = pending.isEmpty()
+                ? null
+                : chunkFailure(chunkIndex, pending, "Unprocessed after " + BATCH_MAX_RETRIES + " retries");
+        return new ChunkOutcome(failure, consumedCapacityUnits, Math.max(attempt - 1, 0));
+    }
+
+    private static BatchWriteReport.ChunkFailure chunkFailure(int chunkIndex, List<WriteRequest> unwritten, String message) {
+        return BatchWriteReport.ChunkFailure.builder()
+                .chunkIndex(chunkIndex)
+                .entityIds(unwritten.stream()
+                        .map(request -> request.putRequest() != null
+                                ? request.putRequest().item().get("entity_id")
+                                : request.deleteRequest().key().get("entity_id"))
+                        .map(entityId -> entityId != null ? entityId.s() : null)
+                        .toList())
+                .message(message)
+                .build();
+    }
+
+    private static void backoff(int attempt) {
+        if (attempt > BATCH_MAX_RETRIES)
+            throw new AppException(ErrorCode.SERVICE_BUSY);
+        sleepBeforeRetry(attempt);
+    }
+
+    private static void sleepBeforeRetry(int attempt) {
+        long ceiling = Math.min(BATCH_BACKOFF_MAX_MILLIS, BATCH_BACKOFF_BASE_MILLIS << (attempt - 1));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppException(ErrorCode.SERVICE_BUSY);
+        }
+    }
+
     public void deleteByPkAndEntityId(String pkValue, String entityIdValue) {
         Key key = Key.builder()
                 .partitionValue(pkValue)
@@ -72,13 +338,14 @@ public abstract class BaseMasterDataRepository<T extends BaseMasterDataItem> {
             pages = table.query(request);
         }
 
-        return processFirstPage(pages);
+        return processFirstPage(pages, index);
     }
 
-    private PaginatedResult<T> processFirstPage(SdkIterable<Page<T>> pages) {
+    private PaginatedResult<T> processFirstPage(SdkIterable<Page<T>> pages, String index) {
         // Initial as empty list
         List<T> pageItems = Collections.emptyList();
         Map<String, AttributeValue> pageLastEvaluatedKey = null;
+        Integer scannedCount = null;
 
         // Get the first page
         if (pages.iterator().hasNext()) {
@@ -87,11 +354,21 @@ public abstract class BaseMasterDataRepository<T extends BaseMasterDataItem> {
             pageItems = firstPage.items();
             // Get the last evaluated key from this page
             pageLastEvaluatedKey = firstPage.lastEvaluatedKey();
+            scannedCount = firstPage.scannedCount();
+        }
+
+        // An ExclusiveStartKey holds the table key plus the queried index key
+        TableMetadata metadata = table.tableSchema().tableMetadata();
+        Set<String> keyAttributes = new HashSet<>(metadata.primaryKeys());
+        if (index != null && !index.isEmpty()) {
+            keyAttributes.addAll(metadata.indexKeys(index));
         }
 
         return PaginatedResult.<T>builder()
                 .items(pageItems)
                 .lastEvaluatedKey(pageLastEvaluatedKey)
+                .scannedCount(scannedCount)
+                .startKeyAfter(item -> table.tableSchema().itemToMap(item, keyAttributes))
                 .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package org.reddot15.be_stockmanager.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.reddot15.be_stockmanager.entity.ImportJob;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+
+import java.util.Optional;
+
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Repository
+public class ImportJobRepository extends BaseMasterDataRepository<ImportJob> {
+    private static final String IMPORT_JOBS_PK = "ImportJobs";
+
+    public ImportJobRepository(DynamoDbEnhancedClient enhancedClient) {
+        super(enhancedClient, ImportJob.class);
+    }
+
+    public ImportJob saveImportJob(ImportJob importJob) {
+        // Assign Partition Key as "ImportJobs"
+        importJob.setPk(IMPORT_JOBS_PK);
+        return save(importJob);
+    }
+
+    public Optional<ImportJob> findImportJobById(String jobId) {
+        // Find job by Partition Key "ImportJobs" and Sort Key is jobId
+        return findByPkAndEntityId(IMPORT_JOBS_PK, jobId);
+    }
+}
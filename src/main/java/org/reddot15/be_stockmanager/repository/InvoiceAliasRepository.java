@@ -0,0 +1,41 @@
+package org.reddot15.be_stockmanager.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.reddot15.be_stockmanager.entity.InvoiceAlias;
+import org.reddot15.be_stockmanager.entity.batch.BatchWriteReport;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Repository
+public class InvoiceAliasRepository extends BaseMasterDataRepository<InvoiceAlias> {
+    private static final String INVOICE_ALIASES_PK = "InvoiceAliases";
+
+    public InvoiceAliasRepository(
+            DynamoDbEnhancedClient enhancedClient,
+            DynamoDbClient dynamoDbClient,
+            ExecutorService dynamoDbExecutor) {
+        super(enhancedClient, dynamoDbClient, InvoiceAlias.class, dynamoDbExecutor);
+    }
+
+    // Record where backfilled invoices moved, by old id
+    public BatchWriteReport saveAliases(Map<String, String> invoiceIdByLegacyId) {
+        return saveAll(invoiceIdByLegacyId.entrySet().stream()
+                .<InvoiceAlias>map(alias -> InvoiceAlias.builder()
+                        .pk(INVOICE_ALIASES_PK)
+                        .entityId(alias.getKey())
+                        .invoiceId(alias.getValue())
+                        .build())
+                .toList());
+    }
+
+    public Optional<String> findInvoiceIdByLegacyId(String legacyId) {
+        return findByPkAndEntityId(INVOICE_ALIASES_PK, legacyId).map(InvoiceAlias::getInvoiceId);
+    }
+}
@@ -0,0 +1,55 @@
+package org.reddot15.be_stockmanager.repository;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.reddot15.be_stockmanager.entity.InvoiceBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Repository
+public class InvoiceBucketRepository extends BaseMasterDataRepository<InvoiceBucket> {
+    private static final String INVOICE_BUCKETS_PK = "InvoiceBuckets";
+
+    // Buckets this node already registered, so each is written once per node
+    Set<String> registeredBuckets = ConcurrentHashMap.newKeySet();
+    // The registry as last read, re-read in the background to learn the buckets other nodes registered
+    LoadingCache<String, List<String>> registry;
+
+    public InvoiceBucketRepository(
+            DynamoDbEnhancedClient enhancedClient,
+            ExecutorService dynamoDbExecutor,
+            @Value("${aws.dynamodb.invoice-buckets.registry-refresh:60000}") long registryRefreshMillis) {
+        super(enhancedClient, null, InvoiceBucket.class, dynamoDbExecutor);
+        this.registry = Caffeine.newBuilder()
+                .refreshAfterWrite(Duration.ofMillis(registryRefreshMillis))
+                .executor(dynamoDbExecutor)
+                .build(key -> findAllByPk(INVOICE_BUCKETS_PK).stream()
+                        .map(InvoiceBucket::getEntityId)
+                        .toList());
+    }
+
+    public void registerBucket(String bucketPk) {
+        if (registeredBuckets.contains(bucketPk)) return;
+        // Idempotent put
+        save(InvoiceBucket.builder().pk(INVOICE_BUCKETS_PK).entityId(bucketPk).build());
+        registeredBuckets.add(bucketPk);
+    }
+
+    public List<String> findAllBucketPks() {
+        // Sorted by sort key, i.e. chronologically; this node's own buckets are known before the registry is re-read
+        Set<String> bucketPks = new TreeSet<>(registry.get(INVOICE_BUCKETS_PK));
+        bucketPks.addAll(registeredBuckets);
+        return List.copyOf(bucketPks);
+    }
+}
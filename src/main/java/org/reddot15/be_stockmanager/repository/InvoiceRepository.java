@@ -1,59 +1,235 @@
 package org.reddot15.be_stockmanager.repository;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import org.reddot15.be_stockmanager.entity.Invoice;
+import org.reddot15.be_stockmanager.entity.batch.BatchWriteReport;
 import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
 import org.reddot15.be_stockmanager.util.QueryConditionalBuilder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.Put;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Invoices are partitioned by created_at bucket ("Invoices#2024-05" for monthly buckets), each bucket being
+ * listed in the "InvoiceBuckets" registry. Invoice ids start with their bucket ("2024-05_<uuid>") so a lookup
+ * by id still reads a single item. Invoices written before bucketing stay under "Invoices" until backfilled.
+ */
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @Repository
 public class InvoiceRepository extends BaseMasterDataRepository<Invoice> {
+    public static final String LEGACY_INVOICES_PK = "Invoices";
+    private static final String CREATED_AT_LSI = "pk-created_at-lsi";
+    private static final char ID_BUCKET_SEPARATOR = '_';
+    // Cursor marking that the previous bucket is exhausted and the next page starts this one
+    private static final String CURSOR_NEXT_BUCKET = "next_bucket";
 
-    public InvoiceRepository(DynamoDbEnhancedClient enhancedClient, ObjectMapper objectMapper) {
-        super(enhancedClient, Invoice.class);
+    // Length and shape of the created_at prefix naming a bucket
+    public enum BucketGranularity {
+        YEAR(4, "\\d{4}"), MONTH(7, "\\d{4}-\\d{2}"), DAY(10, "\\d{4}-\\d{2}-\\d{2}");
+
+        final int prefixLength;
+        final Pattern format;
+
+        BucketGranularity(int prefixLength, String format) {
+            this.prefixLength = prefixLength;
+            this.format = Pattern.compile(format);
+        }
+    }
+
+    InvoiceBucketRepository invoiceBucketRepository;
+    InvoiceAliasRepository invoiceAliasRepository;
+    BucketGranularity bucketGranularity;
+    boolean readLegacyPartition;
+
+    public InvoiceRepository(
+            DynamoDbEnhancedClient enhancedClient,
+            DynamoDbClient dynamoDbClient,
+            InvoiceBucketRepository invoiceBucketRepository,
+            InvoiceAliasRepository invoiceAliasRepository,
+            ExecutorService dynamoDbExecutor,
+            @Value("${aws.dynamodb.invoice-buckets.granularity:MONTH}") BucketGranularity bucketGranularity,
+            @Value("${aws.dynamodb.invoice-buckets.read-legacy-partition:true}") boolean readLegacyPartition) {
+        super(enhancedClient, dynamoDbClient, Invoice.class, dynamoDbExecutor);
+        this.invoiceBucketRepository = invoiceBucketRepository;
+        this.invoiceAliasRepository = invoiceAliasRepository;
+        this.bucketGranularity = bucketGranularity;
+        this.readLegacyPartition = readLegacyPartition;
     }
 
     public Invoice saveInvoice(Invoice invoice) {
-        // Assign Partition Key as "Invoices"
-        invoice.setPk("Invoices");
+        assignBucket(invoice);
         return save(invoice);
     }
 
+    // Batch counterpart of saveInvoice
+    public BatchWriteReport saveInvoices(List<Invoice> invoices) {
+        invoices.forEach(this::assignBucket);
+        return saveAll(invoices);
+    }
+
+    // Transaction item: create the invoice in its bucket, failing if the id is taken
+    public Put newInvoicePut(Invoice invoice) {
+        assignBucket(invoice);
+        return Put.builder()
+                .tableName(table.tableName())
+                .item(table.tableSchema().itemToMap(invoice, true))
+                .conditionExpression("attribute_not_exists(#entity_id)")
+                .expressionAttributeNames(Map.of("#entity_id", "entity_id"))
+                .build();
+    }
+
+    private void assignBucket(Invoice invoice) {
+        // Assign Partition Key as the created_at bucket, and prefix the id with it unless it already is
+        // (e.g. an exported id imported again)
+        String bucket = bucketOf(invoice.getCreatedAt());
+        if (!bucket.equals(bucketOfId(invoice.getEntityId())))
+            invoice.setEntityId(bucket + ID_BUCKET_SEPARATOR + invoice.getEntityId());
+        invoice.setPk(partitionOf(bucket));
+        invoiceBucketRepository.registerBucket(invoice.getPk());
+    }
+
+    // Walk the buckets in chronological order, one bucket per call
     public PaginatedResult<Invoice> findOneInvoicesPage(
             Map<String, AttributeValue> nextPageToken,
             Integer limit) {
-        // Return
-        return findOnePage(
-                "pk-created_at-lsi",
-                QueryConditional.keyEqualTo(Key.builder().partitionValue("Invoices").build()),
+        List<String> partitions = partitions(null, null);
+        // Resume in the bucket the token points at
+        String partition;
+        Map<String, AttributeValue> exclusiveStartKey = null;
+        if (nextPageToken == null || nextPageToken.isEmpty()) {
+            if (partitions.isEmpty()) return PaginatedResult.<Invoice>builder().items(List.of()).build();
+            partition = partitions.getFirst();
+        } else if (nextPageToken.containsKey(CURSOR_NEXT_BUCKET)) {
+            partition = nextPageToken.get(CURSOR_NEXT_BUCKET).s();
+        } else if (nextPageToken.get("pk") != null && nextPageToken.get("pk").s() != null) {
+            partition = nextPageToken.get("pk").s();
+            exclusiveStartKey = nextPageToken;
+        } else {
+            throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+        }
+
+        PaginatedResult<Invoice> page = findOnePage(
+                CREATED_AT_LSI,
+                QueryConditional.keyEqualTo(Key.builder().partitionValue(partition).build()),
                 null,
-                nextPageToken,
+                exclusiveStartKey,
                 limit);
+        // Bucket exhausted: point the next call at the following one, if any
+        if (page.getLastEvaluatedKey() == null || page.getLastEvaluatedKey().isEmpty()) {
+            int next = partitions.indexOf(partition) + 1;
+            page.setLastEvaluatedKey(next > 0 && next < partitions.size()
+                    ? Map.of(CURSOR_NEXT_BUCKET, AttributeValue.fromS(partitions.get(next)))
+                    : null);
+        }
+        // Return
+        return page;
     }
 
+    // Query only the buckets overlapping the window, in parallel, merged by created_at
     public List<Invoice> findInvoicesByCreatedAtBetween(String startDate, String endDate) {
-        return table.index("pk-created_at-lsi")
-                .query(QueryConditionalBuilder.build("Invoices", startDate, endDate))
-                .stream()
-                .flatMap(page -> page.items().stream())
+        List<CompletableFuture<List<Invoice>>> queries = partitions(startDate, endDate).stream()
+                .map(partition -> CompletableFuture.supplyAsync(() -> table.index(CREATED_AT_LSI)
+                        .query(QueryConditionalBuilder.build(partition, startDate, endDate))
+                        .stream()
+                        .flatMap(page -> page.items().stream())
+                        .toList(), dynamoDbExecutor))
+                .toList();
+        return queries.stream()
+                .flatMap(query -> join(query).stream())
+                .sorted(Comparator.comparing(Invoice::getCreatedAt, Comparator.nullsFirst(Comparator.naturalOrder())))
                 .collect(Collectors.toList());
     }
 
-
     public Optional<Invoice> findInvoiceById(String invoiceId) {
-        // Find Product by Partition Key "Invoices" and Sort Key is productId
-        return findByPkAndEntityId("Invoices", invoiceId);
+        // Find Invoice by the Partition Key encoded in its id
+        String bucket = bucketOfId(invoiceId);
+        if (bucket != null) return findByPkAndEntityId(partitionOf(bucket), invoiceId);
+
+        // Ids from before bucketing: still in "Invoices", or moved by the backfill under an alias
+        if (readLegacyPartition) {
+            Optional<Invoice> legacy = findByPkAndEntityId(LEGACY_INVOICES_PK, invoiceId);
+            if (legacy.isPresent()) return legacy;
+        }
+        return invoiceAliasRepository.findInvoiceIdByLegacyId(invoiceId)
+                .filter(movedId -> bucketOfId(movedId) != null)
+                .flatMap(movedId -> findByPkAndEntityId(partitionOf(bucketOfId(movedId)), movedId));
+    }
+
+    // Invoices still under the pre-bucketing partition, read lazily page by page
+    public Stream<Invoice> streamLegacyInvoices() {
+        return table.query(QueryConditional.keyEqualTo(Key.builder().partitionValue(LEGACY_INVOICES_PK).build()))
+                .items()
+                .stream();
+    }
+
+    // Drop invoices from the pre-bucketing partition, once copied into their buckets
+    public BatchWriteReport deleteLegacyInvoices(Collection<String> invoiceIds) {
+        return deleteAll(invoiceIds.stream()
+                .map(invoiceId -> Key.builder().partitionValue(LEGACY_INVOICES_PK).sortValue(invoiceId).build())
+                .toList());
+    }
+
+    public String bucketOf(String createdAt) {
+        if (createdAt == null || createdAt.length() < bucketGranularity.prefixLength)
+            throw new AppException(ErrorCode.INVALID_RECORD);
+        return createdAt.substring(0, bucketGranularity.prefixLength);
+    }
+
+    private static String partitionOf(String bucket) {
+        return LEGACY_INVOICES_PK + "#" + bucket;
+    }
+
+    // "2024-05_<uuid>" -> "2024-05"; null for ids without a bucket, such as "INV_001"
+    private String bucketOfId(String invoiceId) {
+        if (invoiceId == null) return null;
+        int separator = invoiceId.indexOf(ID_BUCKET_SEPARATOR);
+        if (separator < 0) return null;
+        String prefix = invoiceId.substring(0, separator);
+        return bucketGranularity.format.matcher(prefix).matches() ? prefix : null;
+    }
+
+    // Partitions that may hold invoices created within [startDate, endDate], oldest first
+    private List<String> partitions(String startDate, String endDate) {
+        List<String> partitions = new ArrayList<>();
+        if (readLegacyPartition) partitions.add(LEGACY_INVOICES_PK);
+        for (String partition : invoiceBucketRepository.findAllBucketPks()) {
+            String bucket = partition.substring(LEGACY_INVOICES_PK.length() + 1);
+            // Every created_at in the bucket starts with it
+            boolean startsBeforeEnd = endDate == null || bucket.compareTo(endDate) <= 0;
+            boolean endsAfterStart = startDate == null
+                    || startDate.substring(0, Math.min(bucket.length(), startDate.length())).compareTo(bucket) <= 0;
+            if (startsBeforeEnd && endsAfterStart) partitions.add(partition);
+        }
+        return partitions;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
     }
-}
\ No newline at end of file
+}
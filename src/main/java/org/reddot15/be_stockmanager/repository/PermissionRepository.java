@@ -4,6 +4,7 @@ import org.reddot15.be_stockmanager.entity.Permission;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -17,4 +18,9 @@ public class PermissionRepository extends BaseMasterDataRepository<Permission> {
         // Find Permission by Partition Key "Permissions" and Sort Key is permissionId
         return findByPkAndEntityId("Permissions", permissionId);
     }
+
+    public List<Permission> findAllPermissions() {
+        // Load every Permission in a single partition query
+        return findAllByPk("Permissions");
+    }
 }
\ No newline at end of file
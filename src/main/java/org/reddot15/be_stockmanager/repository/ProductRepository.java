@@ -3,31 +3,261 @@ package org.reddot15.be_stockmanager.repository;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import org.reddot15.be_stockmanager.entity.Product;
+import org.reddot15.be_stockmanager.entity.batch.BatchWriteReport;
 import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
 import org.reddot15.be_stockmanager.util.QueryConditionalBuilder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
+/**
+ * Products are spread over N partitions ("Products#0".."Products#N-1", by entity_id hash) so writes and the
+ * pk-sale_price-lsi item collection are not confined to one partition. With a single shard the partition
+ * stays "Products". Changing the shard count requires re-keying the existing products.
+ */
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @Repository
 public class ProductRepository extends BaseMasterDataRepository<Product> {
+    private static final String PRODUCTS_PK = "Products";
+    private static final String SALE_PRICE_LSI = "pk-sale_price-lsi";
+    // Composite cursor of a sharded page: "<shard>:entity_id" + "<shard>:sale_price", or "<shard>:done"
+    private static final String CURSOR_ENTITY_ID = ":entity_id";
+    private static final String CURSOR_SALE_PRICE = ":sale_price";
+    private static final String CURSOR_DONE = ":done";
+    private static final String CURSOR_SHARDS = "shards";
+    // Attributes an imported row must share with the stored product (as Product.equals)
+    private static final List<String> IMPORT_MATCHED_ATTRIBUTES = List.of(
+            "vendor_id", "name", "category_name", "import_price", "sale_price", "vat");
+    // Import UpdateItems of one call in flight at once
+    private static final int IMPORT_UPSERT_PARALLELISM = 16;
+    // Conditional attempts per row before giving up on a product under heavy concurrent change
+    private static final int IMPORT_UPSERT_MAX_ATTEMPTS = 4;
 
-    public ProductRepository(DynamoDbEnhancedClient enhancedClient) {
-        super(enhancedClient, Product.class);
+    int shardCount;
+
+    public ProductRepository(
+            DynamoDbEnhancedClient enhancedClient,
+            DynamoDbClient dynamoDbClient,
+            ExecutorService dynamoDbExecutor,
+            @Value("${aws.dynamodb.product-shards:1}") int shardCount) {
+        super(enhancedClient, dynamoDbClient, Product.class, dynamoDbExecutor);
+        this.shardCount = Math.max(1, shardCount);
     }
 
     public Product saveProduct(Product product) {
-        // Assign Partition Key as "Products"
-        product.setPk("Products");
+        // Assign Partition Key as the product's shard
+        product.setPk(partitionOf(product.getEntityId()));
         return save(product);
     }
 
+    // Transaction item: overwrite an existing product, failing if it was deleted
+    public Put newProductPut(Product product) {
+        product.setPk(partitionOf(product.getEntityId()));
+        return Put.builder()
+                .tableName(table.tableName())
+                .item(table.tableSchema().itemToMap(product, true))
+                .conditionExpression("attribute_exists(#entity_id)")
+                .expressionAttributeNames(Map.of("#entity_id", "entity_id"))
+                .build();
+    }
+
+    // Batch counterpart of saveProduct
+    public BatchWriteReport saveProducts(List<Product> products) {
+        products.forEach(product -> product.setPk(partitionOf(product.getEntityId())));
+        return saveAll(products);
+    }
+
+    /**
+     * Stock-in of imported rows, one conditional UpdateItem per row: amount is ADDed atomically, the product is
+     * created when missing, and an existing product must match the row's immutable attributes (else
+     * PRODUCT_MISMATCH). earliest_expiry keeps the earlier date; DynamoDB has no min(), so a row bringing an
+     * earlier date than the stored one takes a second write, told apart without a read through the old item
+     * returned on the failed condition.
+     */
+    public BatchWriteReport upsertImportedProducts(List<Product> products) {
+        List<UpsertOutcome> outcomes = new ArrayList<>(products.size());
+        if (dynamoDbExecutor == null || products.size() == 1) {
+            products.forEach(product -> outcomes.add(upsertImportedProduct(product)));
+        } else {
+            // Dispatch in a sliding window so one import cannot fill the shared pool's queue
+            Semaphore window = new Semaphore(IMPORT_UPSERT_PARALLELISM);
+            List<CompletableFuture<UpsertOutcome>> writes = new ArrayList<>(products.size());
+            for (Product product : products) {
+                window.acquireUninterruptibly();
+                writes.add(CompletableFuture
+                        .supplyAsync(() -> upsertImportedProduct(product), dynamoDbExecutor)
+                        .whenComplete((outcome, e) -> window.release()));
+            }
+            writes.forEach(write -> outcomes.add(write.join()));
+        }
+
+        // Sum up, one failure entry per row
+        List<BatchWriteReport.ChunkFailure> failures = new ArrayList<>();
+        for (int index = 0; index < outcomes.size(); index++) {
+            if (outcomes.get(index).failure() == null) continue;
+            failures.add(BatchWriteReport.ChunkFailure.builder()
+                    .chunkIndex(index)
+                    .entityIds(List.of(products.get(index).getEntityId()))
+                    .message(outcomes.get(index).failure())
+                    .build());
+        }
+        return BatchWriteReport.builder()
+                .written(products.size() - failures.size())
+                .failures(failures)
+                .consumedCapacityUnits(outcomes.stream().mapToDouble(UpsertOutcome::consumedCapacityUnits).sum())
+                .retries(outcomes.stream().mapToInt(UpsertOutcome::retries).sum())
+                .build();
+    }
+
+    private record UpsertOutcome(String failure, double consumedCapacityUnits, int retries) {}
+
+    private UpsertOutcome upsertImportedProduct(Product product) {
+        product.setPk(partitionOf(product.getEntityId()));
+        Map<String, AttributeValue> item = table.tableSchema().itemToMap(product, true);
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        names.put("#entity_id", "entity_id");
+        names.put("#amount", "amount");
+        values.put(":amount", item.getOrDefault("amount", AttributeValue.fromN("0")));
+
+        // Immutable attributes: condition on an existing product, initial value of a new one
+        List<String> matches = new ArrayList<>();
+        List<String> sets = new ArrayList<>();
+        for (int i = 0; i < IMPORT_MATCHED_ATTRIBUTES.size(); i++) {
+            String name = "#m" + i;
+            names.put(name, IMPORT_MATCHED_ATTRIBUTES.get(i));
+            AttributeValue value = item.get(IMPORT_MATCHED_ATTRIBUTES.get(i));
+            if (value == null) {
+                matches.add("attribute_not_exists(" + name + ")");
+                continue;
+            }
+            values.put(":m" + i, value);
+            matches.add(name + " = :m" + i);
+            sets.add(name + " = :m" + i);
+        }
+        String match = String.join(" AND ", matches);
+
+        // Stock-in keeping the stored expiry when it is not later (the usual case, and a new product)
+        AttributeValue expiry = item.get("earliest_expiry");
+        String keepExpiryUpdate;
+        String keepExpiryCondition;
+        if (expiry == null) {
+            keepExpiryUpdate = (sets.isEmpty() ? "" : "SET " + String.join(", ", sets) + " ") + "ADD #amount :amount";
+            keepExpiryCondition = "attribute_not_exists(#entity_id) OR (" + match + ")";
+        } else {
+            names.put("#expiry", "earliest_expiry");
+            values.put(":expiry", expiry);
+            sets.add("#expiry = if_not_exists(#expiry, :expiry)");
+            keepExpiryUpdate = "SET " + String.join(", ", sets) + " ADD #amount :amount";
+            keepExpiryCondition = "attribute_not_exists(#entity_id) OR (" + match
+                    + " AND (attribute_not_exists(#expiry) OR #expiry <= :expiry))";
+        }
+        // Stock-in lowering the stored expiry
+        String lowerExpiryUpdate = "SET #expiry = :expiry ADD #amount :amount";
+        String lowerExpiryCondition = "attribute_exists(#entity_id) AND " + match + " AND #expiry > :expiry";
+
+        Map<String, AttributeValue> key = Map.of("pk", item.get("pk"), "entity_id", item.get("entity_id"));
+        double consumedCapacityUnits = 0;
+        boolean lowerExpiry = false;
+        for (int attempt = 0; attempt < IMPORT_UPSERT_MAX_ATTEMPTS; attempt++) {
+            String updateExpression = lowerExpiry ? lowerExpiryUpdate : keepExpiryUpdate;
+            String conditionExpression = lowerExpiry ? lowerExpiryCondition : keepExpiryCondition;
+            try {
+                UpdateItemResponse response = dynamoDbClient.updateItem(request -> request
+                        .tableName(table.tableName())
+                        .key(key)
+                        .updateExpression(updateExpression)
+                        .conditionExpression(conditionExpression)
+                        .expressionAttributeNames(names)
+                        .expressionAttributeValues(values)
+                        .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+                if (response.consumedCapacity() != null && response.consumedCapacity().capacityUnits() != null)
+                    consumedCapacityUnits += response.consumedCapacity().capacityUnits();
+                return new UpsertOutcome(null, consumedCapacityUnits, attempt);
+            } catch (ConditionalCheckFailedException e) {
+                Map<String, AttributeValue> stored = e.hasItem() ? e.item() : Map.of();
+                // Deleted meanwhile: create it
+                if (stored.isEmpty()) {
+                    lowerExpiry = false;
+                    continue;
+                }
+                // Product information mismatch
+                if (!matchesStored(item, stored))
+                    return new UpsertOutcome(ErrorCode.PRODUCT_MISMATCH.getMessage(), consumedCapacityUnits, attempt);
+                // Otherwise the expiry comparison decided: take the other write
+                lowerExpiry = expiry != null && stored.get("earliest_expiry") != null
+                        && stored.get("earliest_expiry").s().compareTo(expiry.s()) > 0;
+            } catch (RuntimeException e) {
+                return new UpsertOutcome(e.getMessage(), consumedCapacityUnits, attempt);
+            }
+        }
+        return new UpsertOutcome("Product changed concurrently " + IMPORT_UPSERT_MAX_ATTEMPTS + " times",
+                consumedCapacityUnits, IMPORT_UPSERT_MAX_ATTEMPTS - 1);
+    }
+
+    private static boolean matchesStored(Map<String, AttributeValue> imported, Map<String, AttributeValue> stored) {
+        for (String attribute : IMPORT_MATCHED_ATTRIBUTES) {
+            AttributeValue importedValue = imported.get(attribute);
+            AttributeValue storedValue = stored.get(attribute);
+            if (importedValue == null || storedValue == null) {
+                if (importedValue != storedValue) return false;
+            } else if (importedValue.n() != null && storedValue.n() != null) {
+                // Numbers compare by value, as in the condition
+                if (new BigDecimal(importedValue.n()).compareTo(new BigDecimal(storedValue.n())) != 0) return false;
+            } else if (!importedValue.equals(storedValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Transaction item: take quantity from the product's amount if it holds enough (fails on a missing product)
+    public Update stockDecrement(String productId, int quantity) {
+        return Update.builder()
+                .tableName(table.tableName())
+                .key(Map.of(
+                        "pk", AttributeValue.fromS(partitionOf(productId)),
+                        "entity_id", AttributeValue.fromS(productId)))
+                .updateExpression("ADD #amount :delta")
+                .conditionExpression("attribute_exists(#entity_id) AND #amount >= :quantity")
+                .expressionAttributeNames(Map.of("#entity_id", "entity_id", "#amount", "amount"))
+                .expressionAttributeValues(Map.of(
+                        ":delta", AttributeValue.fromN(Integer.toString(-quantity)),
+                        ":quantity", AttributeValue.fromN(Integer.toString(quantity))))
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .build();
+    }
+
     public PaginatedResult<Product> findOneProductsPage(
             String keyword,
             String categoryName,
@@ -44,8 +274,8 @@ public class ProductRepository extends BaseMasterDataRepository<Product> {
             index = "category_name-sale_price-gsi";
             queryConditional = QueryConditionalBuilder.build(categoryName, minPrice, maxPrice);
         } else {
-            index = "pk-sale_price-lsi";
-            queryConditional = QueryConditionalBuilder.build("Products", minPrice, maxPrice);
+            index = SALE_PRICE_LSI;
+            queryConditional = QueryConditionalBuilder.build(PRODUCTS_PK, minPrice, maxPrice);
         }
 
         // Build the filter expression if a keyword is provided.
@@ -61,6 +291,11 @@ public class ProductRepository extends BaseMasterDataRepository<Product> {
             filterExpression = null;
         }
 
+        // Sharded partition: query every shard and merge
+        if (!useGsiQuery && shardCount > 1) {
+            return findOneShardedProductsPage(minPrice, maxPrice, filterExpression, nextPageToken, limit);
+        }
+
         // Return
         return findOnePage(
                 index,
@@ -71,13 +306,194 @@ public class ProductRepository extends BaseMasterDataRepository<Product> {
     }
 
     public Optional<Product> findProductById(String productId) {
-        // Find Product by Partition Key "Products" and Sort Key is productId
-        return findByPkAndEntityId("Products", productId);
+        // Find Product by its shard's Partition Key and Sort Key is productId
+        return findByPkAndEntityId(partitionOf(productId), productId);
     }
 
     public void deleteProductById(String productId) {
-        // Delete Product by Partition Key "Products" and Sort Key is productId
-        deleteByPkAndEntityId("Products", productId);
+        // Delete Product by its shard's Partition Key and Sort Key is productId
+        deleteByPkAndEntityId(partitionOf(productId), productId);
+    }
+
+    // Batch counterpart of deleteProductById
+    public BatchWriteReport deleteProductsByIds(Collection<String> productIds) {
+        return deleteAll(productIds.stream()
+                .map(productId -> Key.builder().partitionValue(partitionOf(productId)).sortValue(productId).build())
+                .toList());
     }
 
-}
\ No newline at end of file
+    // Every product, shard by shard
+    public List<Product> findAllProducts() {
+        List<Product> products = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            products.addAll(findAllByPk(shardCount == 1 ? PRODUCTS_PK : shardPartition(shard)));
+        }
+        return products;
+    }
+
+    // BatchGetItem by ids, keyed by entity_id (missing products are absent)
+    public Map<String, Product> findProductMapByIds(Collection<String> productIds) {
+        return batchFindByPkAndEntityIds(productIds, this::partitionOf);
+    }
+
+    // BatchGetItem by ids, returned in the order of the ids (missing products are skipped)
+    public List<Product> findProductsByIds(List<String> productIds) {
+        Map<String, Product> found = findProductMapByIds(productIds);
+        return productIds.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    public String partitionOf(String productId) {
+        if (shardCount == 1) return PRODUCTS_PK;
+        return shardPartition(Math.floorMod(productId.hashCode(), shardCount));
+    }
+
+    private String shardPartition(int shard) {
+        return PRODUCTS_PK + "#" + shard;
+    }
+
+    // Scatter-gather: one query per unfinished shard in parallel, then a k-way merge on sale_price
+    private PaginatedResult<Product> findOneShardedProductsPage(
+            Double minPrice,
+            Double maxPrice,
+            Expression filterExpression,
+            Map<String, AttributeValue> cursor,
+            Integer limit) {
+        int pageSize = limit != null && limit > 0 ? limit : 10;
+        // Token from an unsharded layout or another shard count?
+        if (cursor != null && !cursor.isEmpty()
+                && (cursor.get(CURSOR_SHARDS) == null || !String.valueOf(shardCount).equals(cursor.get(CURSOR_SHARDS).n())))
+            throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+
+        // Query
+        List<CompletableFuture<PaginatedResult<Product>>> queries = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (cursor != null && cursor.containsKey(shard + CURSOR_DONE)) {
+                queries.add(null);
+                continue;
+            }
+            QueryConditional queryConditional = QueryConditionalBuilder.build(shardPartition(shard), minPrice, maxPrice);
+            Map<String, AttributeValue> startKey = shardStartKey(cursor, shard);
+            queries.add(CompletableFuture.supplyAsync(
+                    () -> findOnePage(SALE_PRICE_LSI, queryConditional, filterExpression, startKey, pageSize),
+                    dynamoDbExecutor));
+        }
+        List<PaginatedResult<Product>> pages = queries.stream()
+                .map(query -> query == null ? null : join(query))
+                .toList();
+
+        // Unread items of a shard are >= the last key it evaluated: never emit past the lowest such key
+        double bound = Double.POSITIVE_INFINITY;
+        for (PaginatedResult<Product> page : pages) {
+            if (page != null && page.getLastEvaluatedKey() != null && !page.getLastEvaluatedKey().isEmpty())
+                bound = Math.min(bound, Double.parseDouble(page.getLastEvaluatedKey().get("sale_price").n()));
+        }
+
+        // Merge
+        Comparator<int[]> order = Comparator
+                .<int[]>comparingDouble(head -> pages.get(head[0]).getItems().get(head[1]).getSalePrice())
+                .thenComparingInt(head -> head[0]);
+        PriorityQueue<int[]> heads = new PriorityQueue<>(order);
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (pages.get(shard) != null && !pages.get(shard).getItems().isEmpty()) heads.add(new int[]{shard, 0});
+        }
+        List<Product> items = new ArrayList<>(pageSize);
+        // Shard each merged item came from, and each item's position (by identity: equal products may differ by id)
+        List<Integer> itemShards = new ArrayList<>(pageSize);
+        Map<Product, Integer> positions = new IdentityHashMap<>(pageSize);
+        while (items.size() < pageSize && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Product> shardItems = pages.get(head[0]).getItems();
+            Product product = shardItems.get(head[1]);
+            if (product.getSalePrice() > bound) break;
+            positions.put(product, items.size());
+            items.add(product);
+            itemShards.add(head[0]);
+            if (head[1] + 1 < shardItems.size()) heads.add(new int[]{head[0], head[1] + 1});
+        }
+        // Scanned share of the merged items, so the filter's selectivity is not mistaken for the merge's
+        long shardScanned = 0;
+        long shardReturned = 0;
+        for (PaginatedResult<Product> page : pages) {
+            if (page == null) continue;
+            shardScanned += page.getScannedCount() != null ? page.getScannedCount() : page.getItems().size();
+            shardReturned += page.getItems().size();
+        }
+        int scannedCount = (int) (shardReturned == 0 ? shardScanned : shardScanned * items.size() / shardReturned);
+
+        // Return
+        return PaginatedResult.<Product>builder()
+                .items(items)
+                .lastEvaluatedKey(shardCursor(cursor, pages, itemShards))
+                .scannedCount(scannedCount)
+                .startKeyAfter(product -> shardCursor(cursor, pages, itemShards.subList(0, positions.get(product) + 1)))
+                .build();
+    }
+
+    // Cursor resuming after the merged items taken from the given shards, null once every shard is exhausted
+    private Map<String, AttributeValue> shardCursor(
+            Map<String, AttributeValue> cursor,
+            List<PaginatedResult<Product>> pages,
+            List<Integer> takenShards) {
+        int[] consumed = new int[shardCount];
+        takenShards.forEach(shard -> consumed[shard]++);
+
+        // Build the next cursor, shard by shard
+        Map<String, AttributeValue> nextCursor = new HashMap<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            PaginatedResult<Product> page = pages.get(shard);
+            if (page == null) {
+                nextCursor.put(shard + CURSOR_DONE, AttributeValue.fromS("true"));
+                continue;
+            }
+            if (consumed[shard] == page.getItems().size()) {
+                Map<String, AttributeValue> lastEvaluatedKey = page.getLastEvaluatedKey();
+                if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+                    nextCursor.put(shard + CURSOR_DONE, AttributeValue.fromS("true"));
+                } else {
+                    putShardCursor(nextCursor, shard,
+                            lastEvaluatedKey.get("entity_id").s(),
+                            lastEvaluatedKey.get("sale_price").n());
+                }
+            } else if (consumed[shard] > 0) {
+                Product last = page.getItems().get(consumed[shard] - 1);
+                putShardCursor(nextCursor, shard, last.getEntityId(), BigDecimal.valueOf(last.getSalePrice()).toPlainString());
+            } else if (cursor != null && cursor.containsKey(shard + CURSOR_ENTITY_ID)) {
+                // Nothing taken from this shard: keep its cursor
+                nextCursor.put(shard + CURSOR_ENTITY_ID, cursor.get(shard + CURSOR_ENTITY_ID));
+                nextCursor.put(shard + CURSOR_SALE_PRICE, cursor.get(shard + CURSOR_SALE_PRICE));
+            }
+        }
+        boolean allDone = true;
+        for (int shard = 0; shard < shardCount; shard++) {
+            allDone &= nextCursor.containsKey(shard + CURSOR_DONE);
+        }
+        nextCursor.put(CURSOR_SHARDS, AttributeValue.fromN(String.valueOf(shardCount)));
+        return allDone ? null : nextCursor;
+    }
+
+    // ExclusiveStartKey of one shard, or null to start it from the beginning
+    private Map<String, AttributeValue> shardStartKey(Map<String, AttributeValue> cursor, int shard) {
+        if (cursor == null || !cursor.containsKey(shard + CURSOR_ENTITY_ID)) return null;
+        return Map.of(
+                "pk", AttributeValue.fromS(shardPartition(shard)),
+                "entity_id", cursor.get(shard + CURSOR_ENTITY_ID),
+                "sale_price", cursor.get(shard + CURSOR_SALE_PRICE));
+    }
+
+    private static void putShardCursor(Map<String, AttributeValue> cursor, int shard, String entityId, String salePrice) {
+        cursor.put(shard + CURSOR_ENTITY_ID, AttributeValue.fromS(entityId));
+        cursor.put(shard + CURSOR_SALE_PRICE, AttributeValue.fromN(salePrice));
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+}
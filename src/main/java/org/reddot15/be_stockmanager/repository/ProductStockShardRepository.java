@@ -0,0 +1,119 @@
+package org.reddot15.be_stockmanager.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.reddot15.be_stockmanager.entity.ProductStockShard;
+import org.reddot15.be_stockmanager.entity.batch.BatchWriteReport;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counter shards of best-selling products: their sales decrement one of several items, each in its own
+ * partition, instead of all serialising on the product item. Shards are refilled from the product's amount.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Repository
+public class ProductStockShardRepository extends BaseMasterDataRepository<ProductStockShard> {
+    private static final String PRODUCT_STOCK_PK = "ProductStock";
+
+    public ProductStockShardRepository(DynamoDbEnhancedClient enhancedClient) {
+        super(enhancedClient, ProductStockShard.class);
+    }
+
+    // Transaction item: take quantity from the shard if it holds enough (a missing shard holds none)
+    public Update decrement(String productId, int shard, int quantity) {
+        return Update.builder()
+                .tableName(table.tableName())
+                .key(keyOf(productId, shard))
+                .updateExpression("ADD #amount :delta")
+                .conditionExpression("#amount >= :quantity")
+                .expressionAttributeNames(Map.of("#amount", "amount"))
+                .expressionAttributeValues(Map.of(
+                        ":delta", AttributeValue.fromN(Integer.toString(-quantity)),
+                        ":quantity", AttributeValue.fromN(Integer.toString(quantity))))
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .build();
+    }
+
+    // Transaction item: add units to the shard, creating it when missing
+    public Update increment(String productId, int shard, int units) {
+        return Update.builder()
+                .tableName(table.tableName())
+                .key(keyOf(productId, shard))
+                .updateExpression("ADD #amount :delta")
+                .expressionAttributeNames(Map.of("#amount", "amount"))
+                .expressionAttributeValues(Map.of(":delta", AttributeValue.fromN(Integer.toString(units))))
+                .build();
+    }
+
+    // Transaction item: empty the shard if it still holds the units it was read with
+    public Update reset(String productId, int shard, int expected) {
+        return Update.builder()
+                .tableName(table.tableName())
+                .key(keyOf(productId, shard))
+                .updateExpression("SET #amount = :zero")
+                .conditionExpression("#amount = :expected")
+                .expressionAttributeNames(Map.of("#amount", "amount"))
+                .expressionAttributeValues(Map.of(
+                        ":zero", AttributeValue.fromN("0"),
+                        ":expected", AttributeValue.fromN(Integer.toString(expected))))
+                .build();
+    }
+
+    // Consistent read of every shard's amount, by shard (missing shards hold 0)
+    public Map<Integer, Integer> findShardAmounts(String productId, int shardCount) {
+        List<Key> keys = shardKeys(productId, shardCount);
+        Map<Integer, Integer> amounts = new HashMap<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            amounts.put(shard, 0);
+        }
+        batchFindByKeys(keys, true).forEach(stockShard -> amounts.put(
+                Integer.parseInt(stockShard.getPk().substring(stockShard.getPk().lastIndexOf('#') + 1)),
+                stockShard.getAmount() != null ? stockShard.getAmount() : 0));
+        return amounts;
+    }
+
+    // Units held across each product's shards, by product id (products without shards are absent)
+    public Map<String, Integer> findShardTotals(Collection<String> productIds, int shardCount) {
+        List<Key> keys = new ArrayList<>(productIds.size() * shardCount);
+        productIds.forEach(productId -> keys.addAll(shardKeys(productId, shardCount)));
+        Map<String, Integer> totals = new HashMap<>();
+        batchFindByKeys(keys).forEach(stockShard -> totals.merge(
+                stockShard.getEntityId(),
+                stockShard.getAmount() != null ? stockShard.getAmount() : 0,
+                Integer::sum));
+        return totals;
+    }
+
+    public BatchWriteReport deleteShards(String productId, int shardCount) {
+        return deleteAll(shardKeys(productId, shardCount));
+    }
+
+    private static List<Key> shardKeys(String productId, int shardCount) {
+        List<Key> keys = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            keys.add(Key.builder().partitionValue(partitionOf(productId, shard)).sortValue(productId).build());
+        }
+        return keys;
+    }
+
+    private static String partitionOf(String productId, int shard) {
+        return PRODUCT_STOCK_PK + "#" + productId + "#" + shard;
+    }
+
+    private static Map<String, AttributeValue> keyOf(String productId, int shard) {
+        return Map.of(
+                "pk", AttributeValue.fromS(partitionOf(productId, shard)),
+                "entity_id", AttributeValue.fromS(productId));
+    }
+}
@@ -4,6 +4,7 @@ import org.reddot15.be_stockmanager.entity.Role;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -17,4 +18,9 @@ public class RoleRepository extends BaseMasterDataRepository<Role> {
         // Find Role by Partition Key "Roles" and Sort Key is roleId
         return findByPkAndEntityId("Roles", roleId);
     }
+
+    public List<Role> findAllRoles() {
+        // Load every Role in a single partition query
+        return findAllByPk("Roles");
+    }
 }
\ No newline at end of file
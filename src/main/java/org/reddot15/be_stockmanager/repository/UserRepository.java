@@ -5,17 +5,30 @@ import org.reddot15.be_stockmanager.exception.AppException;
 import org.reddot15.be_stockmanager.exception.ErrorCode;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Repository
 public class UserRepository extends BaseMasterDataRepository<User> {
 
-    public UserRepository(DynamoDbEnhancedClient enhancedClient) {
-        super(enhancedClient, User.class);
+    public UserRepository(DynamoDbEnhancedClient enhancedClient, DynamoDbClient dynamoDbClient) {
+        super(enhancedClient, dynamoDbClient, User.class, null);
+    }
+
+    public Optional<User> findUserById(String userId) {
+        // Find User by Partition Key "Users" and Sort Key is userId
+        return findByPkAndEntityId("Users", userId);
     }
 
     public Optional<User> findUserByEmail(String email) {
@@ -40,4 +53,49 @@ public class UserRepository extends BaseMasterDataRepository<User> {
             throw new AppException(ErrorCode.INVALID_USER_QUERY);
         }
     }
-}
\ No newline at end of file
+
+    // Replace only the password hash, and only while it is still the expected one: an UpdateItem leaves
+    // concurrent changes to other attributes (e.g. a security epoch bump) untouched
+    public boolean updatePasswordIfUnchanged(String pk, String userId, String expectedPassword, String newPassword) {
+        User passwordOnly = User.builder()
+                .pk(pk)
+                .entityId(userId)
+                .password(newPassword)
+                .build();
+        try {
+            table.updateItem(UpdateItemEnhancedRequest.builder(User.class)
+                    .item(passwordOnly)
+                    .ignoreNulls(true)
+                    .conditionExpression(Expression.builder()
+                            .expression("#password = :expected")
+                            .putExpressionName("#password", "password")
+                            .putExpressionValue(":expected", AttributeValue.fromS(expectedPassword))
+                            .build())
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            // Password changed or user deleted meanwhile
+            return false;
+        }
+    }
+
+    // Atomically bump the security epoch (an ADD, concurrent bumps and other writes are not lost);
+    // returns the updated user, empty when it does not exist
+    public Optional<User> incrementSecurityEpoch(String userId) {
+        try {
+            UpdateItemResponse response = dynamoDbClient.updateItem(request -> request
+                    .tableName(table.tableName())
+                    .key(Map.of(
+                            "pk", AttributeValue.fromS("Users"),
+                            "entity_id", AttributeValue.fromS(userId)))
+                    .updateExpression("ADD #security_epoch :one")
+                    .conditionExpression("attribute_exists(#entity_id)")
+                    .expressionAttributeNames(Map.of("#security_epoch", "security_epoch", "#entity_id", "entity_id"))
+                    .expressionAttributeValues(Map.of(":one", AttributeValue.fromN("1")))
+                    .returnValues(ReturnValue.ALL_NEW));
+            return Optional.of(table.tableSchema().mapToItem(response.attributes()));
+        } catch (ConditionalCheckFailedException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -3,22 +3,30 @@ package org.reddot15.be_stockmanager.repository;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import org.reddot15.be_stockmanager.entity.Vendor;
+import org.reddot15.be_stockmanager.entity.batch.BatchWriteReport;
 import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @Repository
 public class VendorRepository extends BaseMasterDataRepository<Vendor> {
 
-    public VendorRepository(DynamoDbEnhancedClient enhancedClient) {
-        super(enhancedClient, Vendor.class);
+    public VendorRepository(
+            DynamoDbEnhancedClient enhancedClient,
+            DynamoDbClient dynamoDbClient,
+            ExecutorService dynamoDbExecutor) {
+        super(enhancedClient, dynamoDbClient, Vendor.class, dynamoDbExecutor);
     }
 
     public Vendor saveVendor(Vendor vendor) {
@@ -27,6 +35,12 @@ public class VendorRepository extends BaseMasterDataRepository<Vendor> {
         return save(vendor);
     }
 
+    // Batch counterpart of saveVendor
+    public BatchWriteReport saveVendors(List<Vendor> vendors) {
+        vendors.forEach(vendor -> vendor.setPk("Vendors"));
+        return saveAll(vendors);
+    }
+
     public PaginatedResult<Vendor> findOneVendorsPage(
             Map<String, AttributeValue> nextPageToken,
             Integer limit) {
@@ -44,9 +58,20 @@ public class VendorRepository extends BaseMasterDataRepository<Vendor> {
         return findByPkAndEntityId("Vendors", vendorId);
     }
 
+    // BatchGetItem by ids, keyed by entity_id (missing vendors are absent)
+    public Map<String, Vendor> findVendorMapByIds(Collection<String> vendorIds) {
+        return batchFindByPkAndEntityIds(vendorIds, vendorId -> "Vendors");
+    }
+
     public void deleteVendorById(String vendorId) {
         // Delete Vendor by Partition Key "Vendors" and Sort Key is vendorId
         deleteByPkAndEntityId("Vendors", vendorId);
     }
 
+    // Batch counterpart of deleteVendorById
+    public BatchWriteReport deleteVendorsByIds(Collection<String> vendorIds) {
+        return deleteAll(vendorIds.stream()
+                .map(vendorId -> Key.builder().partitionValue("Vendors").sortValue(vendorId).build())
+                .toList());
+    }
 }
\ No newline at end of file
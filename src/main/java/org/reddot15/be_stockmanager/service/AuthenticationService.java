@@ -5,18 +5,22 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.cache.UserPrincipalCache;
+import org.reddot15.be_stockmanager.cache.UserSecurityEpochTable;
+import org.reddot15.be_stockmanager.config.security.Authority;
+import org.reddot15.be_stockmanager.config.security.RequiresPermission;
 import org.reddot15.be_stockmanager.dto.request.AuthenticationRequest;
 import org.reddot15.be_stockmanager.dto.request.RefreshRequest;
+import org.reddot15.be_stockmanager.dto.request.TokenIntrospectionRequest;
 import org.reddot15.be_stockmanager.dto.response.AuthenticationResponse;
 import org.reddot15.be_stockmanager.dto.response.RefreshResponse;
+import org.reddot15.be_stockmanager.dto.response.TokenIntrospectionResponse;
 import org.reddot15.be_stockmanager.entity.User;
 import org.reddot15.be_stockmanager.exception.AppException;
 import org.reddot15.be_stockmanager.exception.ErrorCode;
-import org.reddot15.be_stockmanager.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtException;
 import org.springframework.stereotype.Service;
@@ -25,6 +29,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 @RequiredArgsConstructor
@@ -33,8 +38,9 @@ import java.util.UUID;
 @Transactional
 @Service
 public class AuthenticationService {
-	PasswordEncoder passwordEncoder;
-	UserRepository userRepository;
+	PasswordHashingService passwordHashingService;
+	UserPrincipalCache userPrincipalCache;
+	UserSecurityEpochTable userSecurityEpochTable;
 	RedisAuthService redisAuthService;
 	TokenService tokenService;
 
@@ -44,12 +50,20 @@ public class AuthenticationService {
 
 	public AuthenticationResponse authenticate(AuthenticationRequest request) {
 		// Fetch
-		User user = userRepository
+		User user = userPrincipalCache
 				.findUserByEmail(request.getEmail())
 				.orElseThrow(() -> new AppException(ErrorCode.UNAUTHENTICATED));
-		// Authenticate
-		boolean authenticated = passwordEncoder.matches(request.getPassword(), user.getPassword());
+		// Authenticate (off the request thread, on the bounded hashing pool)
+		boolean authenticated = passwordHashingService.matches(request.getPassword(), user.getPassword());
 		if (!authenticated) throw new AppException(ErrorCode.UNAUTHENTICATED);
+		// Cost factor changed since this hash was made: rehash transparently
+		// (only the password attribute, and only if it is still the hash just checked)
+		if (passwordHashingService.needsRehash(user.getPassword())) {
+			passwordHashingService.encodeAsync(request.getPassword(), encodedPassword -> {
+				if (!userPrincipalCache.updatePassword(user, encodedPassword))
+					log.debug("Skipped rehash for user {}: password changed meanwhile", user.getEntityId());
+			});
+		}
 		// Generate token
 		String uuid = UUID.randomUUID().toString();
 		String refreshToken = tokenService.generateToken(user, true, uuid);
@@ -64,19 +78,18 @@ public class AuthenticationService {
 	public RefreshResponse refresh(RefreshRequest request) {
 		// Verify token
 		try {
-			Jwt jwt = tokenService.verifyToken(request.getRefreshToken(), true);
+			TokenService.VerifiedRefreshToken verified = tokenService.verifyRefreshToken(request.getRefreshToken());
 			// Get token information
-			User userEntity = userRepository
-					.findUserByEmail(jwt.getSubject())
-					.orElseThrow(() -> new AppException(ErrorCode.UNAUTHENTICATED));
-			String jti = jwt.getClaim("jti");
-			Date expiryTime = Date.from(jwt.getClaim("exp"));
-			// Build & Save invalid token
-			redisAuthService.saveInvalidatedTokenExpirationKey(jti, expiryTime.toInstant().toEpochMilli());
-			// Generate new token
+			Jwt jwt = verified.jwt();
+			String jti = jwt.getId();
+			Date expiryTime = Date.from(jwt.getExpiresAt());
+			// Check & save invalid token in one atomic step: a concurrent replay loses here
+			if (!redisAuthService.invalidateTokenIfValid(jti, expiryTime.toInstant().toEpochMilli()))
+				throw new AppException(ErrorCode.UNAUTHENTICATED);
+			// Generate new token (for the user loaded during verification)
 			String uuid = UUID.randomUUID().toString();
-			String refreshToken = tokenService.generateToken(userEntity, true, uuid);
-			String accessToken = tokenService.generateToken(userEntity, false, uuid);
+			String refreshToken = tokenService.generateToken(verified.user(), true, uuid);
+			String accessToken = tokenService.generateToken(verified.user(), false, uuid);
 			// Return token
 			return RefreshResponse.builder()
 					.accessToken(accessToken)
@@ -87,6 +100,13 @@ public class AuthenticationService {
 		}
 	}
 
+	// Gateways introspect with their own token, granted INTROSPECT_TOKENS
+	@RequiresPermission(Authority.INTROSPECT_TOKENS)
+	public List<TokenIntrospectionResponse> introspect(TokenIntrospectionRequest request) {
+		// Inactive tokens are reported, not rejected
+		return tokenService.introspect(request.getTokens());
+	}
+
 	public void logout() {
 		// Get Jwt token from Context
 		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -97,4 +117,13 @@ public class AuthenticationService {
 		// Save invalid token
 		redisAuthService.saveInvalidatedTokenExpirationKey(jti, expiryTime.toEpochMilli());
 	}
+
+	@RequiresPermission(Authority.REVOKE_USER_SESSIONS)
+	public void revokeUserSessions(String userId) {
+		// Bump epoch: every token issued before now is rejected (refresh tokens on their user lookup)
+		long epoch = userPrincipalCache.incrementSecurityEpoch(userId)
+				.map(User::getSecurityEpoch)
+				.orElseThrow(() -> new AppException(ErrorCode.USER_NOT_FOUND));
+		userSecurityEpochTable.publish(userId, epoch);
+	}
 }
@@ -0,0 +1,317 @@
+package org.reddot15.be_stockmanager.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.dto.response.ImportErrorResponse;
+import org.reddot15.be_stockmanager.dto.response.ImportJobResponse;
+import org.reddot15.be_stockmanager.dto.response.ImportSummaryResponse;
+import org.reddot15.be_stockmanager.entity.ImportJob;
+import org.reddot15.be_stockmanager.entity.ImportJobError;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
+import org.reddot15.be_stockmanager.repository.ImportJobRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs CSV imports in the background: the upload is spooled to a temp file, the job is recorded under
+ * pk "ImportJobs" and its progress is written after every batch. At most max-running imports run at once
+ * (each one already fans its batch writes out on the DynamoDB pool); beyond max-queued, submissions fail
+ * fast with {@link ErrorCode#SERVICE_BUSY}. A job whose node stopped heart-beating is reported INTERRUPTED.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Service
+public class ImportJobService {
+    private static final String NODE_ID = UUID.randomUUID().toString();
+
+    // The import itself, reading the spooled file and reporting running totals
+    @FunctionalInterface
+    public interface ImportTask {
+        ImportSummaryResponse run(InputStream inputStream, Consumer<ImportSummaryResponse> onProgress);
+    }
+
+    ImportJobRepository importJobRepository;
+    ThreadPoolExecutor executor;
+    Duration staleAfter;
+    Duration retention;
+    // Jobs queued or running on this node
+    Map<String, ImportJob> activeJobs = new ConcurrentHashMap<>();
+
+    public ImportJobService(
+            ImportJobRepository importJobRepository,
+            MeterRegistry meterRegistry,
+            @Value("${import-jobs.max-running:2}") int maxRunning,
+            @Value("${import-jobs.max-queued:8}") int maxQueued,
+            @Value("${import-jobs.stale-after:120000}") long staleAfterMillis,
+            @Value("${import-jobs.retention-days:7}") long retentionDays) {
+        this.importJobRepository = importJobRepository;
+        this.staleAfter = Duration.ofMillis(staleAfterMillis);
+        this.retention = Duration.ofDays(retentionDays);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                maxRunning, maxRunning, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueued),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "import-job-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "import-jobs");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        // Record what this node leaves unfinished
+        activeJobs.values().forEach(job -> update(job, () -> {
+            job.setStatus(ImportJob.Status.INTERRUPTED);
+            job.setMessage("Interrupted by a server shutdown, please resubmit the file.");
+            job.setFinishedAt(Instant.now().toString());
+        }));
+    }
+
+    public ImportJobResponse submit(String type, MultipartFile file, ImportTask task) {
+        // File empty exception
+        if (file.isEmpty()) {
+            throw new AppException(ErrorCode.EMPTY_FILE);
+        }
+        // Spool the upload, the request's copy is gone once it returns
+        Path spooledFile;
+        try {
+            spooledFile = Files.createTempFile("import-" + type + "-", ".csv");
+            file.transferTo(spooledFile);
+        } catch (IOException e) {
+            log.error("Error spooling CSV file: {}", e.getMessage(), e);
+            throw new AppException(ErrorCode.FILE_PARSE_FAILED);
+        }
+
+        // Record the job
+        String now = Instant.now().toString();
+        ImportJob job = save(ImportJob.builder()
+                .entityId(UUID.randomUUID().toString())
+                .type(type)
+                .status(ImportJob.Status.QUEUED)
+                .fileName(file.getOriginalFilename())
+                .fileBytes(file.getSize())
+                .bytesRead(0L)
+                .recordsProcessed(0L)
+                .nodeId(NODE_ID)
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+        activeJobs.put(job.getEntityId(), job);
+
+        // Queue it
+        try {
+            executor.execute(() -> run(job, spooledFile, task));
+        } catch (RejectedExecutionException e) {
+            // Backpressure: fail fast
+            activeJobs.remove(job.getEntityId());
+            importJobRepository.deleteByPkAndEntityId(job.getPk(), job.getEntityId());
+            deleteQuietly(spooledFile);
+            throw new AppException(ErrorCode.SERVICE_BUSY);
+        }
+        return toResponse(job);
+    }
+
+    public ImportJobResponse getJob(String type, String jobId) {
+        // Get job, of the caller's import type only
+        ImportJob job = importJobRepository.findImportJobById(jobId)
+                .filter(found -> found.getType().equals(type))
+                .orElseThrow(() -> new AppException(ErrorCode.IMPORT_JOB_NOT_FOUND));
+        // A job nobody heart-beats any more was lost with its node
+        if (isActive(job) && !activeJobs.containsKey(jobId)
+                && Instant.parse(job.getUpdatedAt()).plus(staleAfter).isBefore(Instant.now())) {
+            job.setStatus(ImportJob.Status.INTERRUPTED);
+            job.setMessage("Interrupted by a server restart, please resubmit the file.");
+            job.setFinishedAt(job.getUpdatedAt());
+            save(job);
+        }
+        return toResponse(job);
+    }
+
+    // Keep queued and long-running jobs from looking stale
+    @Scheduled(fixedDelayString = "${import-jobs.heartbeat-interval:30000}")
+    void heartbeat() {
+        activeJobs.values().forEach(job -> update(job, () -> {}));
+    }
+
+    private void run(ImportJob job, Path spooledFile, ImportTask task) {
+        update(job, () -> {
+            job.setStatus(ImportJob.Status.RUNNING);
+            job.setStartedAt(Instant.now().toString());
+        });
+        try (CountingInputStream inputStream = new CountingInputStream(Files.newInputStream(spooledFile))) {
+            ImportSummaryResponse summary = task.run(inputStream, progress -> update(job, () -> {
+                applySummary(job, progress);
+                job.setBytesRead(inputStream.count);
+            }));
+            update(job, () -> {
+                applySummary(job, summary);
+                job.setBytesRead(job.getFileBytes());
+                job.setStatus(ImportJob.Status.SUCCEEDED);
+                job.setFinishedAt(Instant.now().toString());
+            });
+        } catch (IOException | RuntimeException e) {
+            log.error("Import job {} failed: {}", job.getEntityId(), e.getMessage(), e);
+            update(job, () -> {
+                if (executor.isShutdown()) {
+                    job.setStatus(ImportJob.Status.INTERRUPTED);
+                    job.setMessage("Interrupted by a server shutdown, please resubmit the file.");
+                } else {
+                    job.setStatus(ImportJob.Status.FAILED);
+                    job.setMessage(e instanceof AppException appException
+                            ? appException.getErrorCode().getMessage()
+                            : "Import failed.");
+                }
+                job.setFinishedAt(Instant.now().toString());
+            });
+        } finally {
+            activeJobs.remove(job.getEntityId());
+            deleteQuietly(spooledFile);
+        }
+    }
+
+    private void update(ImportJob job, Runnable change) {
+        // The job thread and the heartbeat write the same item
+        synchronized (job) {
+            change.run();
+            job.setUpdatedAt(Instant.now().toString());
+            try {
+                save(job);
+            } catch (RuntimeException e) {
+                // Progress is best effort, the next update rewrites the whole item
+                log.warn("Import job {} state not saved: {}", job.getEntityId(), e.getMessage());
+            }
+        }
+    }
+
+    private ImportJob save(ImportJob job) {
+        // Expire the item retention after the job finished, or after its last heartbeat if its node was lost
+        Instant lastActivity = Instant.parse(job.getFinishedAt() != null ? job.getFinishedAt() : job.getUpdatedAt());
+        job.setExpiresAt(lastActivity.plus(retention).getEpochSecond());
+        return importJobRepository.saveImportJob(job);
+    }
+
+    private static void applySummary(ImportJob job, ImportSummaryResponse summary) {
+        job.setRecordsProcessed(summary.getTotalRecords());
+        job.setImported(summary.getImported());
+        job.setRejected(summary.getRejected());
+        job.setFailed(summary.getFailed());
+        job.setConsumedCapacityUnits(summary.getConsumedCapacityUnits());
+        job.setErrors(summary.getErrors().stream()
+                .map(error -> ImportJobError.builder()
+                        .recordNumber(error.getRecordNumber())
+                        .entityId(error.getEntityId())
+                        .message(error.getMessage())
+                        .build())
+                .toList());
+        job.setErrorsTruncated(summary.getErrorsTruncated());
+    }
+
+    private static boolean isActive(ImportJob job) {
+        return job.getStatus() == ImportJob.Status.QUEUED || job.getStatus() == ImportJob.Status.RUNNING;
+    }
+
+    private static ImportJobResponse toResponse(ImportJob job) {
+        // Rates over the running time so far
+        Double rowsPerSecond = null;
+        Double progress = null;
+        Long etaSeconds = null;
+        if (job.getStartedAt() != null) {
+            Instant end = job.getFinishedAt() != null ? Instant.parse(job.getFinishedAt()) : Instant.now();
+            double elapsedSeconds = Math.max(Duration.between(Instant.parse(job.getStartedAt()), end).toMillis(), 1) / 1000.0;
+            rowsPerSecond = job.getRecordsProcessed() / elapsedSeconds;
+            if (job.getFileBytes() != null && job.getFileBytes() > 0 && job.getBytesRead() != null) {
+                progress = Math.min(1.0, (double) job.getBytesRead() / job.getFileBytes());
+                if (isActive(job) && job.getBytesRead() > 0)
+                    etaSeconds = Math.round((job.getFileBytes() - job.getBytesRead()) / (job.getBytesRead() / elapsedSeconds));
+            }
+        }
+        List<ImportErrorResponse> errors = job.getErrors() == null ? List.of() : job.getErrors().stream()
+                .map(error -> ImportErrorResponse.builder()
+                        .recordNumber(error.getRecordNumber())
+                        .entityId(error.getEntityId())
+                        .message(error.getMessage())
+                        .build())
+                .toList();
+        // Return
+        return ImportJobResponse.builder()
+                .jobId(job.getEntityId())
+                .type(job.getType())
+                .status(job.getStatus().name())
+                .fileName(job.getFileName())
+                .recordsProcessed(job.getRecordsProcessed())
+                .imported(job.getImported())
+                .rejected(job.getRejected())
+                .failed(job.getFailed())
+                .rowsPerSecond(rowsPerSecond)
+                .progress(progress)
+                .etaSeconds(etaSeconds)
+                .consumedCapacityUnits(job.getConsumedCapacityUnits())
+                .message(job.getMessage())
+                .errors(errors)
+                .errorsTruncated(job.getErrorsTruncated())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Temp file {} not deleted: {}", path, e.getMessage());
+        }
+    }
+
+    // Bytes consumed by the parser, for progress and ETA
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int next = super.read();
+            if (next >= 0) count++;
+            return next;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) count += read;
+            return read;
+        }
+    }
+}
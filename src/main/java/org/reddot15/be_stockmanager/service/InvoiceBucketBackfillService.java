@@ -0,0 +1,104 @@
+package org.reddot15.be_stockmanager.service;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.entity.Invoice;
+import org.reddot15.be_stockmanager.entity.batch.BatchWriteReport;
+import org.reddot15.be_stockmanager.repository.InvoiceAliasRepository;
+import org.reddot15.be_stockmanager.repository.InvoiceRepository;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One-off migration of invoices from the single "Invoices" partition into their created_at buckets.
+ * Enabled with aws.dynamodb.invoice-buckets.backfill=true; safe to re-run (invoices are batch-written to their
+ * bucket, and only those written are deleted from the old partition). Migrated invoices get a bucket-prefixed id;
+ * an alias from the old id is written before the original is deleted, so InvoiceRepository.findInvoiceById still
+ * resolves it.
+ */
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@ConditionalOnProperty(name = "aws.dynamodb.invoice-buckets.backfill", havingValue = "true")
+@Service
+public class InvoiceBucketBackfillService implements ApplicationRunner {
+    // Invoices copied, then deleted, per round of batch writes
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    InvoiceRepository invoiceRepository;
+    InvoiceAliasRepository invoiceAliasRepository;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        AtomicLong migrated = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        List<Invoice> batch = new ArrayList<>(BACKFILL_BATCH_SIZE);
+        invoiceRepository.streamLegacyInvoices().forEach(invoice -> {
+            batch.add(invoice);
+            if (batch.size() == BACKFILL_BATCH_SIZE) {
+                migrate(batch, migrated, skipped);
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) migrate(batch, migrated, skipped);
+        log.info("Invoice backfill done: {} migrated, {} skipped", migrated.get(), skipped.get());
+    }
+
+    private void migrate(List<Invoice> legacyInvoices, AtomicLong migrated, AtomicLong skipped) {
+        // Copy into the buckets (new id "<bucket>_<old id>")
+        Map<String, String> legacyIdByNewId = new HashMap<>();
+        List<Invoice> bucketed = new ArrayList<>(legacyInvoices.size());
+        for (Invoice invoice : legacyInvoices) {
+            String legacyId = invoice.getEntityId();
+            try {
+                Invoice copy = Invoice.builder()
+                        .entityId(invoiceRepository.bucketOf(invoice.getCreatedAt()) + "_" + legacyId)
+                        .createdAt(invoice.getCreatedAt())
+                        .updatedAt(invoice.getUpdatedAt())
+                        .total(invoice.getTotal())
+                        .tax(invoice.getTax())
+                        .sales(invoice.getSales())
+                        .build();
+                legacyIdByNewId.put(copy.getEntityId(), legacyId);
+                bucketed.add(copy);
+            } catch (RuntimeException e) {
+                skipped.incrementAndGet();
+                log.warn("Invoice {} not migrated: {}", legacyId, e.getMessage());
+            }
+        }
+        BatchWriteReport copied = invoiceRepository.saveInvoices(bucketed);
+        copied.getFailures().forEach(failure -> failure.getEntityIds().forEach(newId -> {
+            skipped.incrementAndGet();
+            log.warn("Invoice {} not migrated: {}", legacyIdByNewId.remove(newId), failure.getMessage());
+        }));
+
+        // Alias the old ids to the new ones
+        Map<String, String> newIdByLegacyId = new HashMap<>();
+        legacyIdByNewId.forEach((newId, legacyId) -> newIdByLegacyId.put(legacyId, newId));
+        BatchWriteReport aliased = invoiceAliasRepository.saveAliases(newIdByLegacyId);
+        aliased.getFailures().forEach(failure -> failure.getEntityIds().forEach(legacyId -> {
+            skipped.incrementAndGet();
+            legacyIdByNewId.remove(newIdByLegacyId.get(legacyId));
+            log.warn("Invoice {} copied but kept in the legacy partition, alias not written: {}",
+                    legacyId, failure.getMessage());
+        }));
+
+        // Then drop the old items whose copy and alias were written
+        BatchWriteReport deleted = invoiceRepository.deleteLegacyInvoices(legacyIdByNewId.values());
+        deleted.getFailures().forEach(failure ->
+                log.warn("Invoices {} copied but still in the legacy partition: {}", failure.getEntityIds(), failure.getMessage()));
+        long total = migrated.addAndGet(legacyIdByNewId.size());
+        log.info("Invoice backfill: {} migrated ({} WCU in this batch)",
+                total, copied.getConsumedCapacityUnits() + aliased.getConsumedCapacityUnits() + deleted.getConsumedCapacityUnits());
+    }
+}
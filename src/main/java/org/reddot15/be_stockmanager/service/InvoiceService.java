@@ -5,26 +5,48 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVRecord;
+import org.reddot15.be_stockmanager.cache.PagePrefetcher;
+import org.reddot15.be_stockmanager.config.security.Authority;
+import org.reddot15.be_stockmanager.config.security.RequiresPermission;
+import org.reddot15.be_stockmanager.dto.response.ImportJobResponse;
+import org.reddot15.be_stockmanager.dto.response.ImportSummaryResponse;
 import org.reddot15.be_stockmanager.dto.response.InvoiceResponse;
 import org.reddot15.be_stockmanager.dto.response.pagination.DDBPageResponse;
 import org.reddot15.be_stockmanager.entity.Invoice;
+import org.reddot15.be_stockmanager.entity.Product;
 import org.reddot15.be_stockmanager.entity.SaleItem;
+import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
 import org.reddot15.be_stockmanager.exception.AppException;
 import org.reddot15.be_stockmanager.exception.ErrorCode;
 import org.reddot15.be_stockmanager.mapper.InvoiceMapper;
 import org.reddot15.be_stockmanager.repository.InvoiceRepository;
 import org.reddot15.be_stockmanager.repository.ProductRepository;
-import org.reddot15.be_stockmanager.util.CSVUtil;
+import org.reddot15.be_stockmanager.util.CSVColumn;
+import org.reddot15.be_stockmanager.util.CSVImportPipeline;
 import org.reddot15.be_stockmanager.util.DynamoDbPaginationUtil;
-import org.springframework.security.access.prepost.PreAuthorize;
+import org.reddot15.be_stockmanager.util.PaginationTokenCodec;
+import org.reddot15.be_stockmanager.util.TextExportUtil;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
@@ -33,29 +55,57 @@ import java.util.stream.Collectors;
 @Transactional
 @Service
 public class InvoiceService {
+    private static final String IMPORT_JOB_TYPE = "invoices";
+
     InvoiceRepository invoiceRepository;
     InvoiceMapper invoiceMapper;
     ProductRepository productRepository;
+    PaginationTokenCodec paginationTokenCodec;
+    PagePrefetcher pagePrefetcher;
+    ImportJobService importJobService;
+    StockLedgerService stockLedgerService;
     ObjectMapper objectMapper;
 
-    @PreAuthorize("hasAuthority('IMPORT_INVOICES')")
-    public List<InvoiceResponse> importInvoicesFromCSV(MultipartFile file) {
-        List<Invoice> importedInvoices = CSVUtil.processCSVFile(file, this::processInvoiceRecord);
+    @NonFinal
+    @Value("${csv-import.batch-size:500}")
+    int IMPORT_BATCH_SIZE;
+
+    @NonFinal
+    @Value("${csv-import.max-reported-errors:100}")
+    int IMPORT_MAX_REPORTED_ERRORS;
+
+    @RequiresPermission(Authority.IMPORT_INVOICES)
+    public ImportJobResponse importInvoicesFromCSV(MultipartFile file) {
+        return importJobService.submit(IMPORT_JOB_TYPE, file, this::importInvoices);
+    }
+
+    @RequiresPermission(Authority.IMPORT_INVOICES)
+    public ImportJobResponse getImportJob(String jobId) {
+        return importJobService.getJob(IMPORT_JOB_TYPE, jobId);
+    }
 
-        // Convert to response DTOs
-        return importedInvoices.stream()
-                .map(invoiceMapper::toResponse)
-                .collect(Collectors.toList());
+    // Runs on an import job thread
+    private ImportSummaryResponse importInvoices(InputStream inputStream, Consumer<ImportSummaryResponse> onProgress) {
+        ImportSummaryResponse summary = CSVImportPipeline.<Invoice>builder()
+                .recordMapper(this::processInvoiceRecord)
+                .batchStage(this::validateSaleItems)
+                // Each invoice with its stock decrements, atomically
+                .batchWriter(stockLedgerService::recordInvoices)
+                .idOf(Invoice::getEntityId)
+                .onProgress(onProgress)
+                .batchSize(IMPORT_BATCH_SIZE)
+                .maxReportedErrors(IMPORT_MAX_REPORTED_ERRORS)
+                .build()
+                .run(inputStream);
+        pagePrefetcher.invalidate("invoices");
+        pagePrefetcher.invalidate("products");
+        return summary;
     }
 
     private Invoice processInvoiceRecord(CSVRecord csvRecord) {
         try {
             // Mapping
-            Invoice invoice = invoiceMapper.toInvoice(csvRecord);
-            // Checking if any sale-item not exists
-            validateSaleItems(invoice.getSales());
-            // Save the invoice
-            return invoiceRepository.saveInvoice(invoice);
+            return invoiceMapper.toInvoice(csvRecord);
         } catch (IllegalArgumentException | DateTimeParseException | JsonProcessingException e) {
             // Log the error and wrap it in a custom, controlled exception.
             log.error("Error processing CSV record: {}. Details: {}", csvRecord.toString(), e.getMessage());
@@ -63,29 +113,69 @@ public class InvoiceService {
         }
     }
 
-    private void validateSaleItems(List<SaleItem> saleItems) {
-        saleItems.forEach(saleItem ->
-                productRepository.findProductById(saleItem.getProductId())
-                        .orElseThrow(() -> new AppException(ErrorCode.PRODUCT_NOT_FOUND))
-        );
+    // Reject invoices with a sale-item whose product does not exist
+    private List<Invoice> validateSaleItems(List<Invoice> invoices, BiConsumer<Invoice, String> reject) {
+        // Get every product of the batch in one lookup
+        Set<String> productIds = invoices.stream()
+                .flatMap(invoice -> invoice.getSales().stream())
+                .map(SaleItem::getProductId)
+                .collect(Collectors.toSet());
+        Map<String, Product> products = productRepository.findProductMapByIds(productIds);
+        List<Invoice> validInvoices = new ArrayList<>(invoices.size());
+        for (Invoice invoice : invoices) {
+            if (invoice.getSales().stream().allMatch(saleItem -> products.containsKey(saleItem.getProductId())))
+                validInvoices.add(invoice);
+            else
+                reject.accept(invoice, ErrorCode.PRODUCT_NOT_FOUND.getMessage());
+        }
+        return validInvoices;
     }
 
-    @PreAuthorize("hasAuthority('VIEW_INVOICES')")
+    @RequiresPermission(Authority.VIEW_INVOICES)
     public DDBPageResponse<InvoiceResponse> getInvoices(Integer limit, String encodedNextPageToken) {
-        // Delegate to the generic pagination utility with the chosen function.
-        return DynamoDbPaginationUtil.paginate(
-                objectMapper,
-                encodedNextPageToken,
+        // Delegate to the generic pagination utility with the chosen function, through the prefetch stage
+        return pagePrefetcher.get("invoices", Collections.singletonList(limit), encodedNextPageToken, pageToken -> DynamoDbPaginationUtil.paginate(
+                paginationTokenCodec,
+                pageToken,
                 limit,
                 (ddbQueryLimit, currentExclusiveStartKey) ->
                         invoiceRepository.findOneInvoicesPage(
                                 currentExclusiveStartKey,
                                 ddbQueryLimit),
                 invoiceMapper::toResponse
+        ));
+    }
+
+    @RequiresPermission(Authority.VIEW_INVOICES)
+    public StreamingResponseBody exportInvoices(TextExportUtil.Format format, boolean gzip) {
+        // Define the logic to fetch a page of invoices.
+        Function<Map<String, AttributeValue>, PaginatedResult<Invoice>> queryFunction =
+                (exclusiveStartKey) -> invoiceRepository.findOneInvoicesPage(exclusiveStartKey, 1000);
+        if (format == TextExportUtil.Format.NDJSON) {
+            return TextExportUtil.exportToNdjson(objectMapper, invoiceMapper::toResponse, queryFunction, gzip);
+        }
+
+        // Same columns as the CSV import, sales as a JSON array
+        List<CSVColumn<Invoice>> columns = List.of(
+                new CSVColumn<>("entity_id", Invoice::getEntityId),
+                new CSVColumn<>("created_at", Invoice::getCreatedAt),
+                new CSVColumn<>("updated_at", Invoice::getUpdatedAt),
+                new CSVColumn<>("total", Invoice::getTotal),
+                new CSVColumn<>("tax", Invoice::getTax),
+                new CSVColumn<>("sales", this::salesJson)
         );
+        return TextExportUtil.exportToCsv(columns, queryFunction, gzip);
+    }
+
+    private String salesJson(Invoice invoice) {
+        try {
+            return objectMapper.writeValueAsString(invoice.getSales() != null ? invoice.getSales() : List.of());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    @PreAuthorize("hasAuthority('VIEW_INVOICES')")
+    @RequiresPermission(Authority.VIEW_INVOICES)
     public InvoiceResponse getById(String invoiceId) {
         // Get invoice
         Invoice entity = invoiceRepository.findInvoiceById(invoiceId)
@@ -0,0 +1,121 @@
+package org.reddot15.be_stockmanager.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs BCrypt work on a dedicated, size-limited pool so a login storm cannot occupy every request thread.
+ * When the queue is full callers fail fast with {@link ErrorCode#SERVICE_BUSY} instead of piling up.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Service
+public class PasswordHashingService {
+	PasswordEncoder passwordEncoder;
+	ThreadPoolExecutor executor;
+	long timeoutMillis;
+	int bcryptStrength;
+
+	public PasswordHashingService(
+			PasswordEncoder passwordEncoder,
+			MeterRegistry meterRegistry,
+			@Value("${security.password.hashing.threads:0}") int threads,
+			@Value("${security.password.hashing.queue-capacity:64}") int queueCapacity,
+			@Value("${security.password.hashing.timeout:5000}") long timeoutMillis,
+			@Value("${security.password.bcrypt-strength:12}") int bcryptStrength) {
+		this.passwordEncoder = passwordEncoder;
+		this.timeoutMillis = timeoutMillis;
+		this.bcryptStrength = bcryptStrength;
+		// Default to one thread per core: BCrypt is pure CPU
+		int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(
+				poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity),
+				runnable -> {
+					Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+		ExecutorServiceMetrics.monitor(meterRegistry, executor, "password-hashing");
+	}
+
+	@PreDestroy
+	void shutdown() {
+		executor.shutdown();
+	}
+
+	public boolean matches(String rawPassword, String encodedPassword) {
+		return await(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+	}
+
+	// True when the hash was produced with a different BCrypt cost than the configured one
+	public boolean needsRehash(String encodedPassword) {
+		// Format: $2a$<cost>$<salt+hash>
+		if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(3) != '$')
+			return passwordEncoder.upgradeEncoding(encodedPassword);
+		try {
+			return Integer.parseInt(encodedPassword.substring(4, 6)) != bcryptStrength;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	// Hash in the background; skipped silently when the pool is saturated (it is retried on the next login)
+	public void encodeAsync(String rawPassword, Consumer<String> onEncoded) {
+		try {
+			executor.execute(() -> {
+				try {
+					onEncoded.accept(passwordEncoder.encode(rawPassword));
+				} catch (RuntimeException e) {
+					log.warn("Background password rehash failed: {}", e.getMessage());
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			log.debug("Password hashing pool saturated, rehash skipped");
+		}
+	}
+
+	private <T> T await(Callable<T> task) {
+		Future<T> future;
+		try {
+			future = executor.submit(task);
+		} catch (RejectedExecutionException e) {
+			// Backpressure: fail fast
+			throw new AppException(ErrorCode.SERVICE_BUSY);
+		}
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new AppException(ErrorCode.SERVICE_BUSY);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AppException(ErrorCode.SERVICE_BUSY);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
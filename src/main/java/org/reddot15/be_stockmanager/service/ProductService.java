@@ -4,13 +4,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.poi.ss.usermodel.Row;
+import org.reddot15.be_stockmanager.cache.PagePrefetcher;
+import org.reddot15.be_stockmanager.cache.ProductSearchIndex;
+import org.reddot15.be_stockmanager.config.security.Authority;
+import org.reddot15.be_stockmanager.config.security.RequiresPermission;
 import org.reddot15.be_stockmanager.dto.request.ProductCreateRequest;
 import org.reddot15.be_stockmanager.dto.request.ProductUpdateRequest;
+import org.reddot15.be_stockmanager.dto.response.ImportJobResponse;
+import org.reddot15.be_stockmanager.dto.response.ImportSummaryResponse;
 import org.reddot15.be_stockmanager.dto.response.ProductResponse;
 import org.reddot15.be_stockmanager.dto.response.pagination.DDBPageResponse;
 import org.reddot15.be_stockmanager.entity.Product;
@@ -20,24 +23,29 @@ import org.reddot15.be_stockmanager.exception.ErrorCode;
 import org.reddot15.be_stockmanager.mapper.ProductMapper;
 import org.reddot15.be_stockmanager.repository.ProductRepository;
 import org.reddot15.be_stockmanager.repository.VendorRepository;
-import org.reddot15.be_stockmanager.util.CSVUtil;
+import org.reddot15.be_stockmanager.util.CSVColumn;
+import org.reddot15.be_stockmanager.util.CSVImportPipeline;
 import org.reddot15.be_stockmanager.util.DynamoDbPaginationUtil;
+import org.reddot15.be_stockmanager.util.PaginationTokenCodec;
+import org.reddot15.be_stockmanager.util.TextExportUtil;
+import org.reddot15.be_stockmanager.util.ExcelColumn;
 import org.reddot15.be_stockmanager.util.ExcelUtil;
-import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
-import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 @RequiredArgsConstructor
@@ -46,41 +54,56 @@ import java.util.function.Function;
 @Transactional
 @Service
 public class ProductService {
+	// Marks cursors issued by the keyword search index
+	private static final String CURSOR_SEARCH_INDEX = "search_index";
+	private static final String IMPORT_JOB_TYPE = "products";
+
+	@NonFinal
+	@Value("${csv-import.batch-size:500}")
+	int IMPORT_BATCH_SIZE;
+
+	@NonFinal
+	@Value("${csv-import.max-reported-errors:100}")
+	int IMPORT_MAX_REPORTED_ERRORS;
+
 	ProductRepository productRepository;
+	StockLedgerService stockLedgerService;
+	ProductSearchIndex productSearchIndex;
+	PagePrefetcher pagePrefetcher;
+	ImportJobService importJobService;
 	ProductMapper productMapper;
 	VendorRepository vendorRepository;
+	PaginationTokenCodec paginationTokenCodec;
 	ObjectMapper objectMapper;
 
-	@PreAuthorize("hasAuthority('IMPORT_PRODUCT')")
-	public List<ProductResponse> importProductFromCSV(MultipartFile file) {
-		List<Product> importedProducts = CSVUtil.processCSVFile(file, this::processProductRecord);
+	@RequiresPermission(Authority.IMPORT_PRODUCT)
+	public ImportJobResponse importProductFromCSV(MultipartFile file) {
+		return importJobService.submit(IMPORT_JOB_TYPE, file, this::importProducts);
+	}
 
-		return importedProducts.stream()
-				.map(productMapper::toResponse)
-				.toList();
+	@RequiresPermission(Authority.IMPORT_PRODUCT)
+	public ImportJobResponse getImportJob(String jobId) {
+		return importJobService.getJob(IMPORT_JOB_TYPE, jobId);
 	}
 
-	private Product processProductRecord(CSVRecord csvRecord) {
-		// Get product ID
-		String productId = csvRecord.get("entity_id");
-		// Get exists product
-		Optional<Product> foundOptionalProduct = productRepository.findProductById(productId);
-		// Map imported product from CSV
-		Product productToSave = productMapper.toProduct(csvRecord);
-
-		// If not exists
-		if (foundOptionalProduct.isEmpty()) {
-			// Add the new product
-			return productRepository.saveProduct(productToSave);
-		} else {
-			// Update exists product
-			Product existingProduct = foundOptionalProduct.get();
-			productMapper.updateExistingProduct(existingProduct, productToSave);
-			return productRepository.saveProduct(existingProduct);
-		}
+	// Runs on an import job thread
+	private ImportSummaryResponse importProducts(InputStream inputStream, Consumer<ImportSummaryResponse> onProgress) {
+		ImportSummaryResponse summary = CSVImportPipeline.<Product>builder()
+				.recordMapper(productMapper::toProduct)
+				.batchWriter(productRepository::upsertImportedProducts)
+				.idOf(Product::getEntityId)
+				// Keep the search index current
+				.onWritten(productSearchIndex::productsSaved)
+				.onProgress(onProgress)
+				.batchSize(IMPORT_BATCH_SIZE)
+				.maxReportedErrors(IMPORT_MAX_REPORTED_ERRORS)
+				.build()
+				.run(inputStream);
+		pagePrefetcher.invalidate("products");
+		return summary;
 	}
 
-	@PreAuthorize("hasAuthority('CREATE_PRODUCT')")
+	@RequiresPermission(Authority.CREATE_PRODUCT)
 	public ProductResponse create(ProductCreateRequest request) {
 		// Duplicate exception
 		Optional<Product> optionalProduct = productRepository.findProductById(request.getEntityId());
@@ -92,10 +115,13 @@ public class ProductService {
 		// Mappping
 		Product entity = productMapper.toEntity(request);
 		// Save
-		return productMapper.toResponse(productRepository.saveProduct(entity));
+		Product savedProduct = productRepository.saveProduct(entity);
+		productSearchIndex.productSaved(savedProduct);
+		pagePrefetcher.invalidate("products");
+		return productMapper.toResponse(savedProduct);
 	}
 
-	@PreAuthorize("hasAuthority('VIEW_PRODUCT')")
+	@RequiresPermission(Authority.VIEW_PRODUCT)
 	public DDBPageResponse<ProductResponse> getProducts(
 			String keyword,
 			String categoryName,
@@ -103,65 +129,177 @@ public class ProductService {
 			Double maxPrice,
 			Integer limit,
 			String encodedNextPageToken) {
-		// Delegate to the generic pagination utility with the chosen function.
-		return DynamoDbPaginationUtil.paginate(
-				objectMapper,
-				encodedNextPageToken,
+		// Queries with the same index and filters are sized from the same selectivity estimate
+		String queryShape = "products"
+				+ (categoryName != null && !categoryName.isBlank() ? ":category" : "")
+				+ (keyword != null && !keyword.isBlank() ? ":keyword" : "");
+		// Delegate to the generic pagination utility with the chosen function, through the prefetch stage
+		List<Object> query = Arrays.asList(keyword, categoryName, minPrice, maxPrice, limit);
+		return pagePrefetcher.get("products", query, encodedNextPageToken, pageToken -> DynamoDbPaginationUtil.paginate(
+				paginationTokenCodec,
+				queryShape,
+				pageToken,
 				limit,
-				(ddbQueryLimit, currentExclusiveStartKey) ->
-						productRepository.findOneProductsPage(
+				(ddbQueryLimit, currentExclusiveStartKey) -> withShardStock(useSearchIndex(keyword, currentExclusiveStartKey)
+						? findOneIndexedProductsPage(
 								keyword,
 								categoryName,
 								minPrice,
 								maxPrice,
 								currentExclusiveStartKey,
-								ddbQueryLimit),
+								ddbQueryLimit)
+						: productRepository.findOneProductsPage(
+								keyword,
+								categoryName,
+								minPrice,
+								maxPrice,
+								currentExclusiveStartKey,
+								ddbQueryLimit)),
 				productMapper::toResponse
-		);
+		));
 	}
 
-	public Path exportProductsToExcel(
+	// Keyword searches go to the index when it is ready; a listing started there stays there
+	private boolean useSearchIndex(String keyword, Map<String, AttributeValue> exclusiveStartKey) {
+		if (keyword == null || keyword.isBlank())
+			return false;
+		if (exclusiveStartKey == null || exclusiveStartKey.isEmpty())
+			return productSearchIndex.isReady();
+		if (!exclusiveStartKey.containsKey(CURSOR_SEARCH_INDEX))
+			return false;
+		// Its cursor means nothing to DynamoDB
+		if (!productSearchIndex.isReady())
+			throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+		return true;
+	}
+
+	// Matching ids from the index, items with BatchGetItem
+	private PaginatedResult<Product> findOneIndexedProductsPage(
 			String keyword,
 			String categoryName,
 			Double minPrice,
-			Double maxPrice) throws IOException {
-		// Define the headers for the Product export.
-		List<String> headers = List.of(
-				"ID", "Name", "Vendor ID", "Category", "Import Price",
-				"Sale Price", "Amount", "Earliest Expiry", "VAT"
+			Double maxPrice,
+			Map<String, AttributeValue> exclusiveStartKey,
+			Integer limit) {
+		// Resume after the cursor
+		Double afterPrice = null;
+		String afterId = null;
+		if (exclusiveStartKey != null && !exclusiveStartKey.isEmpty()) {
+			try {
+				afterPrice = Double.valueOf(exclusiveStartKey.get("sale_price").n());
+				afterId = Objects.requireNonNull(exclusiveStartKey.get("entity_id").s());
+			} catch (RuntimeException e) {
+				throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+			}
+		}
+		// Search
+		List<ProductSearchIndex.Match> matches = productSearchIndex.search(
+				keyword, categoryName, minPrice, maxPrice, afterPrice, afterId, limit);
+		List<ProductSearchIndex.Match> page = matches.subList(0, Math.min(limit, matches.size()));
+		// Cursor at the last match of the page, if there are more
+		Map<String, AttributeValue> lastEvaluatedKey = matches.size() > limit
+				? indexCursor(page.getLast().entityId(), page.getLast().salePrice())
+				: null;
+		// Return
+		return PaginatedResult.<Product>builder()
+				.items(productRepository.findProductsByIds(page.stream().map(ProductSearchIndex.Match::entityId).toList()))
+				.lastEvaluatedKey(lastEvaluatedKey)
+				.startKeyAfter(product -> page.stream()
+						.filter(match -> match.entityId().equals(product.getEntityId()))
+						.findFirst()
+						.map(match -> indexCursor(match.entityId(), match.salePrice()))
+						.orElseThrow())
+				.build();
+	}
+
+	private static Map<String, AttributeValue> indexCursor(String entityId, double salePrice) {
+		Map<String, AttributeValue> cursor = new HashMap<>();
+		cursor.put("sale_price", AttributeValue.fromN(BigDecimal.valueOf(salePrice).toPlainString()));
+		cursor.put("entity_id", AttributeValue.fromS(entityId));
+		cursor.put(CURSOR_SEARCH_INDEX, AttributeValue.fromS("true"));
+		return cursor;
+	}
+
+	public StreamingResponseBody exportProductsToExcel(
+			String keyword,
+			String categoryName,
+			Double minPrice,
+			Double maxPrice,
+			String width) {
+		// Get column width mode
+		ExcelUtil.ColumnWidth columnWidth = ExcelUtil.ColumnWidth.fromParam(width);
+
+		// Define the columns for the Product export.
+		List<ExcelColumn<Product>> columns = List.of(
+				new ExcelColumn<>("ID", Product::getEntityId),
+				new ExcelColumn<>("Name", Product::getName, 40),
+				new ExcelColumn<>("Vendor ID", Product::getVendorId),
+				new ExcelColumn<>("Category", Product::getCategoryName),
+				new ExcelColumn<>("Import Price", Product::getImportPrice),
+				new ExcelColumn<>("Sale Price", Product::getSalePrice),
+				new ExcelColumn<>("Amount", Product::getAmount),
+				new ExcelColumn<>("Earliest Expiry", product -> product.getEarliestExpiry() != null
+						? product.getEarliestExpiry().toString()
+						: null),
+				new ExcelColumn<>("VAT", Product::getVat)
 		);
 
-		// Define the logic to fetch a page of products.
+		// Call the generic utility with the product-specific configurations.
+		return ExcelUtil.exportToExcel("products", columns, exportPages(keyword, categoryName, minPrice, maxPrice), columnWidth);
+	}
+
+	@RequiresPermission(Authority.VIEW_PRODUCT)
+	public StreamingResponseBody exportProducts(
+			TextExportUtil.Format format,
+			boolean gzip,
+			String keyword,
+			String categoryName,
+			Double minPrice,
+			Double maxPrice) {
 		Function<Map<String, AttributeValue>, PaginatedResult<Product>> queryFunction =
-				(exclusiveStartKey) -> productRepository.findOneProductsPage(
-						keyword,
-						categoryName,
-						minPrice,
-						maxPrice,
-						exclusiveStartKey,
-						1000 // A reasonable chunk size for memory management.
-				);
-
-		// Define the logic to map a Product object to an Excel row.
-		BiConsumer<Row, Product> rowMapper = (row, product) -> {
-			row.createCell(0).setCellValue(product.getEntityId());
-			row.createCell(1).setCellValue(product.getName());
-			row.createCell(2).setCellValue(product.getVendorId());
-			row.createCell(3).setCellValue(product.getCategoryName());
-			row.createCell(4).setCellValue(product.getImportPrice());
-			row.createCell(5).setCellValue(product.getSalePrice());
-			row.createCell(6).setCellValue(product.getAmount());
-			if (product.getEarliestExpiry() != null) {
-				row.createCell(7).setCellValue(product.getEarliestExpiry().toString());
-			}
-			row.createCell(8).setCellValue(product.getVat());
-		};
+				exportPages(keyword, categoryName, minPrice, maxPrice);
+		if (format == TextExportUtil.Format.NDJSON) {
+			return TextExportUtil.exportToNdjson(objectMapper, productMapper::toResponse, queryFunction, gzip);
+		}
 
-		// Call the generic utility with the product-specific configurations.
-		return ExcelUtil.exportToExcel("products", headers, queryFunction, rowMapper);
+		// Same columns as the CSV import
+		List<CSVColumn<Product>> columns = List.of(
+				new CSVColumn<>("entity_id", Product::getEntityId),
+				new CSVColumn<>("vendor_id", Product::getVendorId),
+				new CSVColumn<>("name", Product::getName),
+				new CSVColumn<>("category_name", Product::getCategoryName),
+				new CSVColumn<>("import_price", Product::getImportPrice),
+				new CSVColumn<>("sale_price", Product::getSalePrice),
+				new CSVColumn<>("amount", Product::getAmount),
+				new CSVColumn<>("earliest_expiry", Product::getEarliestExpiry),
+				new CSVColumn<>("vat", Product::getVat)
+		);
+		return TextExportUtil.exportToCsv(columns, queryFunction, gzip);
+	}
+
+	// Define the logic to fetch a page of products for an export.
+	private Function<Map<String, AttributeValue>, PaginatedResult<Product>> exportPages(
+			String keyword,
+			String categoryName,
+			Double minPrice,
+			Double maxPrice) {
+		return (exclusiveStartKey) -> withShardStock(productRepository.findOneProductsPage(
+				keyword,
+				categoryName,
+				minPrice,
+				maxPrice,
+				exclusiveStartKey,
+				1000 // A reasonable chunk size for memory management.
+		));
 	}
 
-	@PreAuthorize("hasAuthority('UPDATE_PRODUCT')")
+	// Stock of sharded products includes the units parked in their shards
+	private PaginatedResult<Product> withShardStock(PaginatedResult<Product> page) {
+		stockLedgerService.addShardStock(page.getItems());
+		return page;
+	}
+
+	@RequiresPermission(Authority.UPDATE_PRODUCT)
 	public ProductResponse update(String productId, ProductUpdateRequest request) {
 		// Check exists
 		Product entity = productRepository.findProductById(productId)
@@ -171,17 +309,23 @@ public class ProductService {
 			throw new AppException(ErrorCode.VENDOR_NOT_FOUND);
 		// Updating
 		productMapper.updateEntity(entity, request);
-		// Save
-		return productMapper.toResponse(productRepository.saveProduct(entity));
+		// Save, the amount becoming the whole stock
+		Product savedProduct = stockLedgerService.saveProduct(entity);
+		productSearchIndex.productSaved(savedProduct);
+		pagePrefetcher.invalidate("products");
+		return productMapper.toResponse(savedProduct);
 	}
 
-	@PreAuthorize("hasAuthority('DELETE_PRODUCT')")
+	@RequiresPermission(Authority.DELETE_PRODUCT)
 	public String delete(String productId) {
 		// Check exists
 		if (productRepository.findProductById(productId).isEmpty())
 			throw new AppException(ErrorCode.PRODUCT_NOT_FOUND);
 		// Delete
 		productRepository.deleteProductById(productId);
+		stockLedgerService.deleteShards(productId);
+		productSearchIndex.productDeleted(productId);
+		pagePrefetcher.invalidate("products");
 		// Return ID
 		return productId;
 	}
@@ -1,30 +1,333 @@
 package org.reddot15.be_stockmanager.service;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.reddot15.be_stockmanager.cache.RevocationNearCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
+/**
+ * Revoked token ids, stored in Redis as one set per expiry window ("auth:revoked:{windowEnd}").
+ * Each set expires at the end of its window, so all of its members go away in bulk at most one window
+ * after their tokens expired (an expired token is already rejected by the JWT exp check).
+ */
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @Slf4j
 @Transactional
 @Service
-public class RedisAuthService {
-    RedisTemplate<String, Long> redisLongTemplate;
+public class RedisAuthService implements MessageListener, SubscriptionListener {
+    private static final String REVOCATION_CHANNEL = "auth:revocations";
+    private static final String REVOKED_KEY_PREFIX = "auth:revoked:";
+    // Tolerated drift between the expiry used when revoking and the one derived when checking
+    private static final Duration EXPIRY_SKEW = Duration.ofSeconds(5);
+    // A window must span both sides of the skew, so an id is looked up in at most two buckets
+    private static final long MIN_BUCKET_SECONDS = 2 * EXPIRY_SKEW.toSeconds();
+    // Keys written before the bucketed layout: the bare jti, holding the expiry in epoch millis
+    private static final Pattern LEGACY_KEY = Pattern.compile(
+            "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    // KEYS: the bucket to add to, the other buckets that may already hold the id, then legacy keys
+    // ARGV: token id, bucket expiry (epoch seconds), channel, event, number of bucket keys
+    private static final RedisScript<Long> REVOKE_IF_VALID_SCRIPT = RedisScript.of("""
+            local buckets = tonumber(ARGV[5])
+            for i = 1, #KEYS do
+                local found
+                if i <= buckets then
+                    found = redis.call('SISMEMBER', KEYS[i], ARGV[1])
+                else
+                    found = redis.call('EXISTS', KEYS[i])
+                end
+                if found == 1 then return 0 end
+            end
+            redis.call('SADD', KEYS[1], ARGV[1])
+            redis.call('EXPIREAT', KEYS[1], ARGV[2])
+            redis.call('PUBLISH', ARGV[3], ARGV[4])
+            return 1
+            """, Long.class);
+
+    StringRedisTemplate stringRedisTemplate;
+    RedisMessageListenerContainer redisMessageListenerContainer;
+    RevocationNearCache revocationNearCache;
+    MeterRegistry meterRegistry;
+
+    AtomicLong storeKeys = new AtomicLong();
+    AtomicLong storeMembers = new AtomicLong();
+    AtomicLong storeMemoryBytes = new AtomicLong();
+
+    @NonFinal
+    @Value("${auth.revocation.bucket-seconds:60}")
+    long BUCKET_SECONDS;
+
+    @NonFinal
+    @Value("${auth.revocation.migrate-legacy-keys:true}")
+    boolean MIGRATE_LEGACY_KEYS;
+
+    @NonFinal
+    volatile boolean legacyKeysMigrated;
+
+    @PostConstruct
+    void subscribeToRevocations() {
+        // Fail fast on a window too small for the expiry skew
+        if (BUCKET_SECONDS < MIN_BUCKET_SECONDS) {
+            throw new IllegalStateException(
+                    "auth.revocation.bucket-seconds must be >= " + MIN_BUCKET_SECONDS + ", got " + BUCKET_SECONDS);
+        }
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(REVOCATION_CHANNEL));
+        Gauge.builder("auth.revocation.store.keys", storeKeys, AtomicLong::get)
+                .description("Bucket keys currently holding revoked token ids in Redis")
+                .register(meterRegistry);
+        Gauge.builder("auth.revocation.store.members", storeMembers, AtomicLong::get)
+                .description("Revoked token ids currently stored in Redis")
+                .register(meterRegistry);
+        Gauge.builder("auth.revocation.store.memory", storeMemoryBytes, AtomicLong::get)
+                .description("Redis memory used by the revocation buckets")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // Start (or restart) the subscription whenever it is not listening, e.g. Redis was down at boot
+    @Scheduled(initialDelay = 0, fixedDelayString = "${auth.revocation.near-cache.resubscribe-interval:5000}")
+    void ensureSubscribed() {
+        if (redisMessageListenerContainer.isListening()) return;
+        revocationNearCache.setReady(false);
+        try {
+            redisMessageListenerContainer.stop();
+            redisMessageListenerContainer.start();
+        } catch (RuntimeException e) {
+            log.debug("Revocation subscription not available yet: {}", e.getMessage());
+        }
+    }
 
     // Save
     public void saveInvalidatedTokenExpirationKey(String invalidatedToken, Long timeExpiration) {
-        redisLongTemplate.opsForValue().set(invalidatedToken, timeExpiration, timeExpiration, TimeUnit.MILLISECONDS);
+        byte[] key = bytes(bucketKey(timeExpiration));
+        long expireAtSeconds = bucketEnd(timeExpiration);
+        byte[] event = bytes(invalidatedToken + ":" + timeExpiration);
+        // Add to the bucket, (re)arm its expiry and notify every node in one round trip
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.setCommands().sAdd(key, bytes(invalidatedToken));
+            connection.keyCommands().expireAt(key, expireAtSeconds);
+            connection.publish(bytes(REVOCATION_CHANNEL), event);
+            return null;
+        });
+        // Update this node right away
+        revocationNearCache.add(invalidatedToken, timeExpiration);
+    }
+
+    // Check-and-save atomically: true when this call revoked the id, false when it was already revoked
+    // (e.g. a refresh token replayed concurrently)
+    public boolean invalidateTokenIfValid(String tokenId, Long timeExpiration) {
+        // Already known locally: no need to ask Redis
+        if (revocationNearCache.isReady() && revocationNearCache.get(tokenId) != null) return false;
+        String key = bucketKey(timeExpiration);
+        List<String> keys = new ArrayList<>();
+        keys.add(key);
+        candidateKeys(Instant.ofEpochMilli(timeExpiration)).stream()
+                .filter(candidate -> !candidate.equals(key))
+                .forEach(keys::add);
+        int bucketCount = keys.size();
+        if (MIGRATE_LEGACY_KEYS && !legacyKeysMigrated) keys.add(tokenId);
+        Long revoked = stringRedisTemplate.execute(REVOKE_IF_VALID_SCRIPT, keys,
+                tokenId,
+                Long.toString(bucketEnd(timeExpiration)),
+                REVOCATION_CHANNEL,
+                tokenId + ":" + timeExpiration,
+                Integer.toString(bucketCount));
+        // Update this node right away either way
+        revocationNearCache.add(tokenId, timeExpiration);
+        return Long.valueOf(1).equals(revoked);
+    }
+
+    // Get: expiresAt is the expiry the token id was (or would be) revoked with
+    public boolean isTokenInvalidated(String invalidatedToken, Instant expiresAt) {
+        return !findInvalidatedTokens(Map.of(invalidatedToken, expiresAt)).isEmpty();
+    }
+
+    // Get many: the revoked ids among the given ones (id -> revocation expiry), in one round trip
+    public Set<String> findInvalidatedTokens(Map<String, Instant> expiresAtByTokenId) {
+        // Served locally once the near-cache is seeded and subscribed
+        if (revocationNearCache.isReady()) {
+            return expiresAtByTokenId.keySet().stream()
+                    .filter(tokenId -> revocationNearCache.get(tokenId) != null)
+                    .collect(Collectors.toSet());
+        }
+        List<String> tokenIds = new ArrayList<>(expiresAtByTokenId.keySet());
+        List<List<String>> keysPerToken = tokenIds.stream()
+                .map(tokenId -> candidateKeys(expiresAtByTokenId.get(tokenId)))
+                .toList();
+        boolean checkLegacyKey = MIGRATE_LEGACY_KEYS && !legacyKeysMigrated;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < tokenIds.size(); i++) {
+                byte[] member = bytes(tokenIds.get(i));
+                keysPerToken.get(i).forEach(key -> connection.setCommands().sIsMember(bytes(key), member));
+                if (checkLegacyKey) connection.stringCommands().get(member);
+            }
+            return null;
+        });
+        // Replies come back in command order: walk them token by token
+        Set<String> revoked = new HashSet<>();
+        int position = 0;
+        for (int i = 0; i < tokenIds.size(); i++) {
+            int replies = keysPerToken.get(i).size() + (checkLegacyKey ? 1 : 0);
+            for (Object result : results.subList(position, position + replies)) {
+                if (Boolean.TRUE.equals(result) || result instanceof String) revoked.add(tokenIds.get(i));
+            }
+            position += replies;
+        }
+        return revoked;
+    }
+
+    // Revocation published by any node
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        try {
+            revocationNearCache.add(body.substring(0, separator), Long.parseLong(body.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed revocation event: {}", body);
+        }
+    }
+
+    // (Re)subscribed: reload everything revoked so far, events received meanwhile are merged
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        CompletableFuture.runAsync(() -> {
+            try {
+                if (MIGRATE_LEGACY_KEYS && !legacyKeysMigrated) migrateLegacyKeys();
+                seedNearCache();
+                revocationNearCache.setReady(true);
+                log.info("Revocation near-cache ready");
+            } catch (RuntimeException e) {
+                log.warn("Failed to seed revocation near-cache, falling back to Redis: {}", e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void onChannelUnsubscribed(byte[] channel, long count) {
+        revocationNearCache.setReady(false);
+    }
+
+    // Refresh the store size/memory gauges
+    @Scheduled(fixedDelayString = "${auth.revocation.stats-interval:60000}")
+    void refreshStoreStats() {
+        long keys = 0, members = 0, memory = 0;
+        try (Cursor<String> cursor = scanBuckets()) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                keys++;
+                Long size = stringRedisTemplate.opsForSet().size(key);
+                members += size != null ? size : 0;
+                Object usage = stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                        connection.execute("MEMORY", bytes("USAGE"), bytes(key)));
+                if (usage instanceof Long bytesUsed) memory += bytesUsed;
+            }
+        } catch (RuntimeException e) {
+            log.debug("Revocation store stats unavailable: {}", e.getMessage());
+            return;
+        }
+        storeKeys.set(keys);
+        storeMembers.set(members);
+        storeMemoryBytes.set(memory);
+    }
+
+    private void seedNearCache() {
+        try (Cursor<String> buckets = scanBuckets()) {
+            while (buckets.hasNext()) {
+                String key = buckets.next();
+                long expiresAtMillis = Long.parseLong(key.substring(REVOKED_KEY_PREFIX.length())) * 1000;
+                try (Cursor<String> members = stringRedisTemplate.opsForSet()
+                        .scan(key, ScanOptions.scanOptions().count(1000).build())) {
+                    members.forEachRemaining(tokenId -> revocationNearCache.add(tokenId, expiresAtMillis));
+                }
+            }
+        }
+    }
+
+    // Move revocations written as one "<jti> -> <expiry millis>" key each into their buckets
+    private void migrateLegacyKeys() {
+        long migrated = 0;
+        try (Cursor<String> cursor = stringRedisTemplate.scan(
+                ScanOptions.scanOptions().match("*-*-*-*-*").count(1000).build())) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                if (!LEGACY_KEY.matcher(key).matches()) continue;
+                String value = stringRedisTemplate.opsForValue().get(key);
+                long expiresAtMillis;
+                try {
+                    expiresAtMillis = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (expiresAtMillis > System.currentTimeMillis()) {
+                    saveInvalidatedTokenExpirationKey(key, expiresAtMillis);
+                }
+                stringRedisTemplate.delete(key);
+                migrated++;
+            }
+        }
+        legacyKeysMigrated = true;
+        if (migrated > 0) log.info("Migrated {} legacy revocation keys to bucketed sets", migrated);
+    }
+
+    private Cursor<String> scanBuckets() {
+        return stringRedisTemplate.scan(
+                ScanOptions.scanOptions().match(REVOKED_KEY_PREFIX + "*").count(1000).build());
+    }
+
+    // Buckets an id revoked with an expiry close to expiresAt may live in (one, or two across a boundary)
+    private List<String> candidateKeys(Instant expiresAt) {
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(bucketKey(expiresAt.minus(EXPIRY_SKEW).toEpochMilli()));
+        keys.add(bucketKey(expiresAt.plus(EXPIRY_SKEW).toEpochMilli()));
+        return new ArrayList<>(keys);
+    }
+
+    private String bucketKey(long expiresAtMillis) {
+        return REVOKED_KEY_PREFIX + bucketEnd(expiresAtMillis);
+    }
+
+    // End of the window containing the expiry, in epoch seconds
+    private long bucketEnd(long expiresAtMillis) {
+        long expiresAtSeconds = Math.ceilDiv(expiresAtMillis, 1000);
+        return Math.ceilDiv(expiresAtSeconds, BUCKET_SECONDS) * BUCKET_SECONDS;
     }
 
-    // Get
-    public Long getInvalidatedTokenExpirationKey(String invalidatedToken) {
-        return redisLongTemplate.opsForValue().get(invalidatedToken);
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
     }
 }
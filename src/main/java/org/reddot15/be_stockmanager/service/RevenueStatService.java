@@ -4,6 +4,8 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.config.security.Authority;
+import org.reddot15.be_stockmanager.config.security.RequiresPermission;
 import org.reddot15.be_stockmanager.dto.response.CategoryRevenueStatResponse;
 import org.reddot15.be_stockmanager.dto.response.ProductRevenueStatResponse;
 import org.reddot15.be_stockmanager.dto.response.VendorRevenueStatResponse;
@@ -16,7 +18,6 @@ import org.reddot15.be_stockmanager.exception.ErrorCode;
 import org.reddot15.be_stockmanager.repository.InvoiceRepository;
 import org.reddot15.be_stockmanager.repository.ProductRepository;
 import org.reddot15.be_stockmanager.repository.VendorRepository;
-import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -24,6 +25,9 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -36,8 +40,9 @@ public class RevenueStatService {
     InvoiceRepository invoiceRepository;
     VendorRepository vendorRepository;
     ProductRepository productRepository;
+    StockLedgerService stockLedgerService;
 
-    @PreAuthorize("hasAuthority('VIEW_FINANCIAL_STATISTIC')")
+    @RequiresPermission(Authority.VIEW_FINANCIAL_STATISTIC)
     public List<VendorRevenueStatResponse> getRevenueStatsByVendor(
             String startDate,
             String endDate
@@ -46,8 +51,9 @@ public class RevenueStatService {
                 startDate,
                 endDate,
                 SaleItem::getVendorId,
-                entry -> {
-                    Vendor entity = vendorRepository.findVendorById(entry.getKey())
+                vendorRepository::findVendorMapByIds,
+                (entry, vendors) -> {
+                    Vendor entity = Optional.ofNullable(vendors.get(entry.getKey()))
                             .orElseThrow(() -> new AppException(ErrorCode.VENDOR_NOT_FOUND));
                     return VendorRevenueStatResponse.builder()
                             .id(entity.getEntityId())
@@ -61,7 +67,7 @@ public class RevenueStatService {
         return allStats;
     }
 
-    @PreAuthorize("hasAuthority('VIEW_FINANCIAL_STATISTIC')")
+    @RequiresPermission(Authority.VIEW_FINANCIAL_STATISTIC)
     public List<ProductRevenueStatResponse> getRevenueStatsByProduct(
             String startDate,
             String endDate
@@ -70,10 +76,12 @@ public class RevenueStatService {
                 startDate,
                 endDate,
                 SaleItem::getProductId,
-                entry -> {
-                    Product productEntity = productRepository.findProductById(entry.getKey())
+                this::findProductsWithVendors,
+                (entry, products) -> {
+                    ProductWithVendor found = Optional.ofNullable(products.get(entry.getKey()))
                             .orElseThrow(() -> new AppException(ErrorCode.PRODUCT_NOT_FOUND));
-                    Vendor vendorEntity = vendorRepository.findVendorById(productEntity.getVendorId())
+                    Product productEntity = found.product();
+                    Vendor vendorEntity = Optional.ofNullable(found.vendor())
                             .orElseThrow(() -> new AppException(ErrorCode.VENDOR_NOT_FOUND));
                     return ProductRevenueStatResponse.builder()
                             .id(productEntity.getEntityId())
@@ -90,7 +98,7 @@ public class RevenueStatService {
         return allStats;
     }
 
-    @PreAuthorize("hasAuthority('VIEW_FINANCIAL_STATISTIC')")
+    @RequiresPermission(Authority.VIEW_FINANCIAL_STATISTIC)
     public List<CategoryRevenueStatResponse> getRevenueStatsByCategory(
             String startDate,
             String endDate
@@ -99,7 +107,8 @@ public class RevenueStatService {
                 startDate,
                 endDate,
                 SaleItem::getCategoryName,
-                entry -> CategoryRevenueStatResponse.builder()
+                categoryNames -> Map.of(),
+                (entry, none) -> CategoryRevenueStatResponse.builder()
                         .name(entry.getKey())
                         .totalRevenue(entry.getValue())
                         .build(),
@@ -109,12 +118,29 @@ public class RevenueStatService {
         return allStats;
     }
 
-    // Calculate revenue stats
-    private <T> List<T> getRevenueStats(
+    // Products and their vendors, each in one batch
+    private Map<String, ProductWithVendor> findProductsWithVendors(Set<String> productIds) {
+        Map<String, Product> products = productRepository.findProductMapByIds(productIds);
+        stockLedgerService.addShardStock(products.values());
+        Map<String, Vendor> vendors = vendorRepository.findVendorMapByIds(products.values().stream()
+                .map(Product::getVendorId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+        return products.values().stream()
+                .collect(Collectors.toMap(
+                        Product::getEntityId,
+                        product -> new ProductWithVendor(product, product.getVendorId() != null ? vendors.get(product.getVendorId()) : null)));
+    }
+
+    private record ProductWithVendor(Product product, Vendor vendor) {}
+
+    // Calculate revenue stats; the entities behind the group keys are loaded at once before mapping
+    private <T, E> List<T> getRevenueStats(
             String startDate,
             String endDate,
             Function<SaleItem, String> groupBy,
-            Function<Map.Entry<String, Double>, T> mapper,
+            Function<Set<String>, Map<String, E>> entityLoader,
+            BiFunction<Map.Entry<String, Double>, Map<String, E>, T> mapper,
             Comparator<T> comparator) {
 
         List<Invoice> invoices = invoiceRepository.findInvoicesByCreatedAtBetween(startDate, endDate);
@@ -127,8 +153,10 @@ public class RevenueStatService {
                         Collectors.summingDouble(saleItem -> saleItem.getAmount() * saleItem.getPrice())
                 ));
 
+        Map<String, E> entities = entityLoader.apply(revenueMap.keySet());
+
         return revenueMap.entrySet().stream()
-                .map(mapper)
+                .map(entry -> mapper.apply(entry, entities))
                 .sorted(comparator)
                 .collect(Collectors.toList());
     }
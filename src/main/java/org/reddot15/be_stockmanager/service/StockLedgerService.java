@@ -0,0 +1,403 @@
+package org.reddot15.be_stockmanager.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.entity.Invoice;
+import org.reddot15.be_stockmanager.entity.Product;
+import org.reddot15.be_stockmanager.entity.SaleItem;
+import org.reddot15.be_stockmanager.entity.batch.BatchWriteReport;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
+import org.reddot15.be_stockmanager.repository.InvoiceRepository;
+import org.reddot15.be_stockmanager.repository.ProductRepository;
+import org.reddot15.be_stockmanager.repository.ProductStockShardRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Records invoices against stock: each invoice is one TransactWriteItems that creates it and decrements the
+ * amount of every product sold, each decrement conditioned on enough stock, so an invoice is written with all
+ * its decrements or not at all.
+ * <p>
+ * Products listed in stock.counter-shards.products keep their sellable stock in counter shards (see
+ * {@link ProductStockShardRepository}); a sale picks one at random, and a drained shard is refilled from the
+ * product's amount in chunks of stock.counter-shards.refill-size (when that runs low, the other shards are
+ * gathered into it). Their stored product amount therefore excludes the units parked in shards: reads add them
+ * back with {@link #addShardStock}, an amount set outright empties the shards ({@link #saveProduct}), and a
+ * deleted product's shards go with it ({@link #deleteShards}).
+ * <p>
+ * Metrics: stock.transactions by outcome, and per product stock.decrement.conflicts (transaction conflicts
+ * with concurrent writers), stock.decrement.retries and stock.shard.refills; to bound their series, only
+ * sharded products get their own product tag, the others are counted under "other".
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Service
+public class StockLedgerService {
+    // DynamoDB's limit of items per transaction
+    private static final int MAX_TRANSACT_ITEMS = 100;
+    // Invoice transactions of one call in flight at once
+    private static final int TRANSACTION_PARALLELISM = 8;
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long BACKOFF_BASE_MILLIS = 20;
+    private static final long BACKOFF_MAX_MILLIS = 1000;
+    // Product tag of the metrics of products that are not sharded
+    private static final String OTHER_PRODUCTS_TAG = "other";
+
+    DynamoDbClient dynamoDbClient;
+    InvoiceRepository invoiceRepository;
+    ProductRepository productRepository;
+    ProductStockShardRepository productStockShardRepository;
+    ExecutorService dynamoDbExecutor;
+    MeterRegistry meterRegistry;
+    Set<String> shardedProducts;
+    int shardCount;
+    int refillSize;
+
+    public StockLedgerService(
+            DynamoDbClient dynamoDbClient,
+            InvoiceRepository invoiceRepository,
+            ProductRepository productRepository,
+            ProductStockShardRepository productStockShardRepository,
+            ExecutorService dynamoDbExecutor,
+            MeterRegistry meterRegistry,
+            @Value("${stock.counter-shards.products:}") List<String> shardedProducts,
+            @Value("${stock.counter-shards.count:4}") int shardCount,
+            @Value("${stock.counter-shards.refill-size:50}") int refillSize) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.invoiceRepository = invoiceRepository;
+        this.productRepository = productRepository;
+        this.productStockShardRepository = productStockShardRepository;
+        this.dynamoDbExecutor = dynamoDbExecutor;
+        this.meterRegistry = meterRegistry;
+        this.shardedProducts = shardedProducts.stream()
+                .map(String::trim)
+                .filter(productId -> !productId.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        this.shardCount = Math.max(1, shardCount);
+        this.refillSize = Math.max(1, refillSize);
+    }
+
+    // Record invoices, transactions running concurrently; invoices that could not be recorded are reported
+    public BatchWriteReport recordInvoices(List<Invoice> invoices) {
+        Semaphore window = new Semaphore(TRANSACTION_PARALLELISM);
+        List<CompletableFuture<SaleOutcome>> transactions = new ArrayList<>(invoices.size());
+        for (Invoice invoice : invoices) {
+            window.acquireUninterruptibly();
+            transactions.add(CompletableFuture
+                    .supplyAsync(() -> recordInvoice(invoice), dynamoDbExecutor)
+                    .whenComplete((outcome, e) -> window.release()));
+        }
+        List<SaleOutcome> outcomes = transactions.stream().map(CompletableFuture::join).toList();
+
+        // Sum up, one failure entry per invoice
+        List<BatchWriteReport.ChunkFailure> failures = new ArrayList<>();
+        for (int index = 0; index < outcomes.size(); index++) {
+            if (outcomes.get(index).failure() == null) continue;
+            failures.add(BatchWriteReport.ChunkFailure.builder()
+                    .chunkIndex(index)
+                    .entityIds(List.of(invoices.get(index).getEntityId()))
+                    .message(outcomes.get(index).failure())
+                    .build());
+        }
+        return BatchWriteReport.builder()
+                .written(invoices.size() - failures.size())
+                .failures(failures)
+                .consumedCapacityUnits(outcomes.stream().mapToDouble(SaleOutcome::consumedCapacityUnits).sum())
+                .retries(outcomes.stream().mapToInt(SaleOutcome::retries).sum())
+                .build();
+    }
+
+    // Products as read from the table, with the units parked in their shards added to amount
+    public void addShardStock(Collection<Product> products) {
+        List<String> productIds = products.stream()
+                .map(Product::getEntityId)
+                .filter(shardedProducts::contains)
+                .distinct()
+                .toList();
+        if (productIds.isEmpty()) return;
+        Map<String, Integer> shardTotals = productStockShardRepository.findShardTotals(productIds, shardCount);
+        for (Product product : products) {
+            Integer units = shardTotals.get(product.getEntityId());
+            if (units != null && units != 0)
+                product.setAmount((product.getAmount() != null ? product.getAmount() : 0) + units);
+        }
+    }
+
+    // Save an existing product whose amount is its whole stock; a sharded product's shards are emptied in the
+    // same transaction, retried when a sale or refill moves them in between
+    public Product saveProduct(Product product) {
+        String productId = product.getEntityId();
+        if (!shardedProducts.contains(productId)) return productRepository.saveProduct(product);
+        Put productPut = productRepository.newProductPut(product);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) sleepBeforeRetry(attempt);
+            List<TransactWriteItem> items = new ArrayList<>(shardCount + 1);
+            items.add(TransactWriteItem.builder().put(productPut).build());
+            productStockShardRepository.findShardAmounts(productId, shardCount).forEach((shard, amount) -> {
+                if (amount != 0) items.add(TransactWriteItem.builder()
+                        .update(productStockShardRepository.reset(productId, shard, amount))
+                        .build());
+            });
+            try {
+                dynamoDbClient.transactWriteItems(request -> request.transactItems(items));
+                return product;
+            } catch (TransactionCanceledException e) {
+                CancellationReason reason = e.hasCancellationReasons() ? e.cancellationReasons().get(0) : null;
+                if (reason != null && "ConditionalCheckFailed".equals(reason.code()))
+                    throw new AppException(ErrorCode.PRODUCT_NOT_FOUND);
+            }
+        }
+        throw new AppException(ErrorCode.SERVICE_BUSY);
+    }
+
+    // Called after a product is deleted, once no sale or refill can reach its shards
+    public void deleteShards(String productId) {
+        if (!shardedProducts.contains(productId)) return;
+        productStockShardRepository.deleteShards(productId, shardCount).getFailures().forEach(failure ->
+                log.warn("Stock shards of deleted product {} not removed: {}", productId, failure.getMessage()));
+    }
+
+    private record SaleOutcome(String failure, double consumedCapacityUnits, int retries) {}
+
+    private SaleOutcome recordInvoice(Invoice invoice) {
+        // Quantity per product: a transaction may touch each item once
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (SaleItem saleItem : invoice.getSales()) {
+            if (saleItem.getAmount() == null || saleItem.getAmount() <= 0)
+                return outcome("invalid", ErrorCode.INVALID_RECORD.getMessage(), 0, 0);
+            quantities.merge(saleItem.getProductId(), saleItem.getAmount(), Integer::sum);
+        }
+        if (quantities.size() + 1 > MAX_TRANSACT_ITEMS)
+            return outcome("invalid", "Invoice sells more than " + (MAX_TRANSACT_ITEMS - 1) + " products.", 0, 0);
+        List<String> productIds = new ArrayList<>(quantities.keySet());
+        Put invoicePut = invoiceRepository.newInvoicePut(invoice);
+
+        // Shard each sharded product's decrement goes to, re-drawn on contention
+        Map<String, Integer> shards = new LinkedHashMap<>();
+        Map<String, Set<Integer>> drainedShards = new LinkedHashMap<>();
+        productIds.stream()
+                .filter(shardedProducts::contains)
+                .forEach(productId -> shards.put(productId, ThreadLocalRandom.current().nextInt(shardCount)));
+
+        double consumedCapacityUnits = 0;
+        int attempt = 0;
+        // Moves to another shard are not contention: no backoff, bounded apart
+        int redirects = 0;
+        while (true) {
+            // Transaction
+            List<TransactWriteItem> items = new ArrayList<>(productIds.size() + 1);
+            items.add(TransactWriteItem.builder().put(invoicePut).build());
+            for (String productId : productIds) {
+                int quantity = quantities.get(productId);
+                items.add(TransactWriteItem.builder().update(shards.containsKey(productId)
+                        ? productStockShardRepository.decrement(productId, shards.get(productId), quantity)
+                        : productRepository.stockDecrement(productId, quantity)).build());
+            }
+            try {
+                TransactWriteItemsResponse response = dynamoDbClient.transactWriteItems(request -> request
+                        .transactItems(items)
+                        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+                consumedCapacityUnits += capacityOf(response.consumedCapacity());
+                return outcome("committed", null, consumedCapacityUnits, attempt);
+            } catch (TransactionCanceledException e) {
+                // Why each item was cancelled, in transaction order
+                List<CancellationReason> reasons = e.hasCancellationReasons() ? e.cancellationReasons() : List.of();
+                boolean contended = reasons.isEmpty();
+                for (int index = 0; index < reasons.size(); index++) {
+                    CancellationReason reason = reasons.get(index);
+                    String code = reason.code();
+                    if (code == null || code.equals("None")) continue;
+                    if (index == 0) {
+                        if (code.equals("ConditionalCheckFailed"))
+                            return outcome("duplicate", "Invoice already exists.", consumedCapacityUnits, attempt);
+                        contended = true;
+                        continue;
+                    }
+                    String productId = productIds.get(index - 1);
+                    switch (code) {
+                        case "ConditionalCheckFailed" -> {
+                            String failure = shards.containsKey(productId) && redirects++ < 2 * shardCount + 2
+                                    ? nextShard(productId, quantities.get(productId), reason, shards, drainedShards)
+                                    : stockFailure(productId, reason);
+                            if (failure != null)
+                                return outcome("insufficient", failure, consumedCapacityUnits, attempt);
+                        }
+                        case "TransactionConflict" -> {
+                            contended = true;
+                            counter("stock.decrement.conflicts", productId).increment();
+                            // Spread the next try over another shard
+                            if (shards.containsKey(productId))
+                                shards.put(productId, ThreadLocalRandom.current().nextInt(shardCount));
+                        }
+                        case "ThrottlingError", "ProvisionedThroughputExceeded" -> contended = true;
+                        default -> {
+                            return outcome("failed", code + ": " + reason.message(), consumedCapacityUnits, attempt);
+                        }
+                    }
+                }
+                if (contended) {
+                    if (++attempt >= MAX_ATTEMPTS)
+                        return outcome("failed", "Gave up after " + MAX_ATTEMPTS + " attempts under contention.",
+                                consumedCapacityUnits, attempt);
+                    productIds.forEach(productId -> counter("stock.decrement.retries", productId).increment());
+                    sleepBeforeRetry(attempt);
+                }
+            } catch (RuntimeException e) {
+                return outcome("failed", e.getMessage(), consumedCapacityUnits, attempt);
+            }
+        }
+    }
+
+    private static String stockFailure(String productId, CancellationReason reason) {
+        // Product not found, or not enough of it
+        if (!reason.hasItem() || reason.item().isEmpty())
+            return ErrorCode.PRODUCT_NOT_FOUND.getMessage() + " (" + productId + ")";
+        return "Insufficient stock for product " + productId + ".";
+    }
+
+    // A shard could not cover the quantity: try another one, else refill this one; null when there is a next try
+    private String nextShard(
+            String productId,
+            int quantity,
+            CancellationReason reason,
+            Map<String, Integer> shards,
+            Map<String, Set<Integer>> drainedShards) {
+        int shard = shards.get(productId);
+        Set<Integer> drained = drainedShards.computeIfAbsent(productId, id -> new HashSet<>());
+        drained.add(shard);
+        if (drained.size() < shardCount) {
+            int next;
+            do {
+                next = ThreadLocalRandom.current().nextInt(shardCount);
+            } while (drained.contains(next));
+            shards.put(productId, next);
+            return null;
+        }
+        // Every shard drained: move stock from the product to this one
+        int shardAmount = reason.hasItem() && reason.item().containsKey("amount")
+                ? Integer.parseInt(reason.item().get("amount").n())
+                : 0;
+        if (!refill(productId, shard, Math.max(refillSize, quantity), quantity - shardAmount))
+            return "Insufficient stock for product " + productId + ".";
+        drained.remove(shard);
+        return null;
+    }
+
+    // Move units from the product's amount to a shard; takes what is left when that is at least minimum
+    private boolean refill(String productId, int shard, int units, int minimum) {
+        int transfer = units;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) sleepBeforeRetry(attempt);
+            int transferUnits = transfer;
+            try {
+                dynamoDbClient.transactWriteItems(request -> request.transactItems(
+                        TransactWriteItem.builder()
+                                .update(productRepository.stockDecrement(productId, transferUnits))
+                                .build(),
+                        TransactWriteItem.builder()
+                                .update(productStockShardRepository.increment(productId, shard, transferUnits))
+                                .build()));
+                counter("stock.shard.refills", productId).increment();
+                return true;
+            } catch (TransactionCanceledException e) {
+                CancellationReason reason = e.hasCancellationReasons() ? e.cancellationReasons().get(0) : null;
+                if (reason == null || !"ConditionalCheckFailed".equals(reason.code())) {
+                    if (reason != null && "TransactionConflict".equals(reason.code()))
+                        counter("stock.decrement.conflicts", productId).increment();
+                    continue;
+                }
+                // Less left than asked for
+                AttributeValue left = reason.hasItem() ? reason.item().get("amount") : null;
+                int available = left != null ? Integer.parseInt(left.n()) : 0;
+                if (available < minimum) return consolidate(productId, shard, minimum, available);
+                transfer = available;
+            }
+        }
+        return false;
+    }
+
+    // Last resort when the product runs low: gather what the other shards and the product hold into this shard
+    private boolean consolidate(String productId, int shard, int minimum, int productAmount) {
+        Map<Integer, Integer> shardAmounts = productStockShardRepository.findShardAmounts(productId, shardCount);
+        shardAmounts.remove(shard);
+        int total = productAmount + shardAmounts.values().stream().mapToInt(Integer::intValue).sum();
+        if (total < minimum) return false;
+        List<TransactWriteItem> items = new ArrayList<>();
+        shardAmounts.forEach((other, amount) -> {
+            if (amount > 0) items.add(TransactWriteItem.builder()
+                    .update(productStockShardRepository.decrement(productId, other, amount))
+                    .build());
+        });
+        if (productAmount > 0) items.add(TransactWriteItem.builder()
+                .update(productRepository.stockDecrement(productId, productAmount))
+                .build());
+        items.add(TransactWriteItem.builder()
+                .update(productStockShardRepository.increment(productId, shard, total))
+                .build());
+        try {
+            dynamoDbClient.transactWriteItems(request -> request.transactItems(items));
+            counter("stock.shard.refills", productId).increment();
+            return true;
+        } catch (TransactionCanceledException e) {
+            // Sold meanwhile: the invoice fails with insufficient stock, as it nearly did anyway
+            return false;
+        }
+    }
+
+    private SaleOutcome outcome(String result, String failure, double consumedCapacityUnits, int retries) {
+        meterRegistry.counter("stock.transactions", "outcome", result).increment();
+        return new SaleOutcome(failure, consumedCapacityUnits, retries);
+    }
+
+    // Tagged per product only for the configured sharded products, the rest share one series
+    private Counter counter(String name, String productId) {
+        return meterRegistry.counter(name, "product", shardedProducts.contains(productId) ? productId : OTHER_PRODUCTS_TAG);
+    }
+
+    private static double capacityOf(List<ConsumedCapacity> consumedCapacity) {
+        if (consumedCapacity == null) return 0;
+        return consumedCapacity.stream()
+                .map(ConsumedCapacity::capacityUnits)
+                .filter(Objects::nonNull)
+                .mapToDouble(Double::doubleValue)
+                .sum();
+    }
+
+    private static void sleepBeforeRetry(int attempt) {
+        // Exponential backoff with full jitter
+        long ceiling = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << (attempt - 1));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppException(ErrorCode.SERVICE_BUSY);
+        }
+    }
+}
@@ -3,33 +3,37 @@ package org.reddot15.be_stockmanager.service;
 import com.nimbusds.jose.*;
 import com.nimbusds.jose.crypto.MACSigner;
 import com.nimbusds.jwt.JWTClaimsSet;
+import jakarta.annotation.PostConstruct;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
-import org.reddot15.be_stockmanager.entity.Permission;
-import org.reddot15.be_stockmanager.entity.Role;
+import org.reddot15.be_stockmanager.cache.RolePermissionGraph;
+import org.reddot15.be_stockmanager.cache.UserPrincipalCache;
+import org.reddot15.be_stockmanager.cache.UserSecurityEpochTable;
+import org.reddot15.be_stockmanager.cache.VerifiedTokenCache;
+import org.reddot15.be_stockmanager.dto.response.TokenIntrospectionResponse;
 import org.reddot15.be_stockmanager.entity.User;
-import org.reddot15.be_stockmanager.exception.AppException;
-import org.reddot15.be_stockmanager.exception.ErrorCode;
-import org.reddot15.be_stockmanager.repository.PermissionRepository;
-import org.reddot15.be_stockmanager.repository.RoleRepository;
-import org.reddot15.be_stockmanager.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtException;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.CollectionUtils;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.StringJoiner;
+import java.util.Optional;
+import java.util.Set;
 
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -39,9 +43,10 @@ import java.util.StringJoiner;
 public class TokenService {
 	NimbusJwtDecoder nimbusJwtDecoder;
 	RedisAuthService redisAuthService;
-	UserRepository userRepository;
-	RoleRepository roleRepository;
-	PermissionRepository permissionRepository;
+	VerifiedTokenCache verifiedTokenCache;
+	UserPrincipalCache userPrincipalCache;
+	RolePermissionGraph rolePermissionGraph;
+	UserSecurityEpochTable userSecurityEpochTable;
 
 	@NonFinal
 	@Value("${jwt.signer-key}")
@@ -55,6 +60,15 @@ public class TokenService {
 	@Value("${jwt.refreshable-duration}")
 	Long REFRESHABLE_DURATION;
 
+	// Thread-safe: built once and shared by every signing call
+	@NonFinal
+	JWSSigner jwsSigner;
+
+	@PostConstruct
+	void initSigner() throws KeyLengthException {
+		jwsSigner = new MACSigner(SIGNER_KEY.getBytes());
+	}
+
 	public String generateToken(User user, Boolean isRefreshToken, String jti) {
 		// Define Header
 		JWSHeader header = new JWSHeader(JWSAlgorithm.HS512);
@@ -67,7 +81,8 @@ public class TokenService {
 				.issuer("reddot15.com")
 				.issueTime(new Date())
 				.expirationTime(expirationTime)
-				.jwtID(isRefreshToken ? jti : null);
+				.jwtID(isRefreshToken ? jti : null)
+				.claim("sep", securityEpochOf(user));
 
 		if (!isRefreshToken) {
 			claimsBuilder
@@ -83,7 +98,7 @@ public class TokenService {
 		JWSObject jwsObject = new JWSObject(header, payload);
 		// Sign JWSObject & Return
 		try {
-			jwsObject.sign(new MACSigner(SIGNER_KEY.getBytes()));
+			jwsObject.sign(jwsSigner);
 			return jwsObject.serialize();
 		} catch (JOSEException e) {
 			log.error("Cannot create token", e);
@@ -93,14 +108,17 @@ public class TokenService {
 
 	public Jwt verifyToken(String token, Boolean isRefreshToken) {
 		try {
-			// Decode jwt (function include integrity verify & expiry verify)
-			Jwt jwt = nimbusJwtDecoder.decode(token);
-			// Validate token based on type
+			// Decode & verify signature and subject (access tokens are served from cache when already verified)
+			Jwt jwt = isRefreshToken ? decodeAndVerifySubject(token) : decodeAccessToken(token);
+			// Validate token based on type (revocation is checked on every call, never cached)
 			String tokenId = isRefreshToken ? jwt.getClaim("jti") : jwt.getClaim("rid");
-			if (Objects.isNull(tokenId) || redisAuthService.getInvalidatedTokenExpirationKey(tokenId) != null) {
+			if (Objects.isNull(tokenId) || redisAuthService.isTokenInvalidated(tokenId, revocationExpiry(jwt, isRefreshToken))) {
+				throw new JwtException("Invalid token");
+			}
+			// Sessions of this user killed since the token was issued? Checked on every call, a cached token included
+			if (!isRefreshToken && isSecurityEpochStale(jwt)) {
 				throw new JwtException("Invalid token");
 			}
-			if (userRepository.findUserByEmail(jwt.getSubject()).isEmpty()) throw new JwtException("Invalid user");
 			// Return jwt
 			return jwt;
 		} catch (JwtException e) {
@@ -109,30 +127,113 @@ public class TokenService {
 		}
 	}
 
-	private String buildScope(List<String> roleIds){
-		// Result string
-		StringJoiner stringJoiner = new StringJoiner(" ");
-		// Role exists?:
-		if (!CollectionUtils.isEmpty(roleIds))
-			// For each role:
-			roleIds.forEach(roleId -> {
-				// Get role
-				Role role = roleRepository.findRoleById(roleId)
-						.orElseThrow(() -> new AppException(ErrorCode.ROLE_NOT_FOUND));
-				// Add role
-				stringJoiner.add("ROLE_" + role.getName());
-				// Permission exists?:
-				if (!CollectionUtils.isEmpty(role.getPermissionIds()))
-					// For each permission:
-					role.getPermissionIds().forEach(permissionId -> {
-						// Get permission
-						Permission permission = permissionRepository.findPermissionById(permissionId)
-										.orElseThrow(() -> new AppException(ErrorCode.PERMISSION_NOT_FOUND));
-						// Add permission
-						stringJoiner.add(permission.getName());
-					});
-			});
-		// Return
-		return stringJoiner.toString();
+	// Verify a refresh token's signature and subject, keeping the loaded user for the new tokens.
+	// Revocation is left to the caller, which checks and revokes it in one atomic step.
+	public VerifiedRefreshToken verifyRefreshToken(String token) {
+		try {
+			// Decode jwt (function include integrity verify & expiry verify)
+			Jwt jwt = nimbusJwtDecoder.decode(token);
+			// Subject still exists & token not issued before its sessions were killed?
+			User user = userPrincipalCache.findUserByEmail(jwt.getSubject())
+					.filter(candidate -> securityEpochOf(candidate) <= securityEpochOf(jwt))
+					.orElseThrow(() -> new JwtException("Invalid user"));
+			if (Objects.isNull(jwt.getId())) throw new JwtException("Invalid token");
+			return new VerifiedRefreshToken(jwt, user);
+		} catch (JwtException e) {
+			log.error("JWT decoding failed: {}", e.getMessage());
+			throw e;
+		}
+	}
+
+	public record VerifiedRefreshToken(Jwt jwt, User user) {
+	}
+
+	// Validate a batch of access tokens: signatures from cache, revocation of all of them in one round trip
+	public List<TokenIntrospectionResponse> introspect(List<String> tokens) {
+		// Decode & verify signatures (null for a token that fails)
+		List<Jwt> jwts = new ArrayList<>(tokens.size());
+		Map<String, Instant> revocationExpiries = new HashMap<>();
+		for (String token : tokens) {
+			Jwt jwt = null;
+			try {
+				jwt = decodeAccessToken(token);
+			} catch (JwtException e) {
+				log.debug("Introspected token invalid: {}", e.getMessage());
+			}
+			String tokenId = jwt != null ? jwt.getClaim("rid") : null;
+			if (tokenId != null) revocationExpiries.put(tokenId, revocationExpiry(jwt, false));
+			jwts.add(tokenId != null ? jwt : null);
+		}
+		// Check revocation
+		Set<String> revokedTokenIds = revocationExpiries.isEmpty()
+				? Set.of()
+				: redisAuthService.findInvalidatedTokens(revocationExpiries);
+		// Build responses, in request order
+		Instant now = Instant.now();
+		return jwts.stream()
+				.map(jwt -> jwt == null
+						|| revokedTokenIds.contains(jwt.<String>getClaim("rid"))
+						|| isSecurityEpochStale(jwt)
+						? TokenIntrospectionResponse.builder().active(false).build()
+						: TokenIntrospectionResponse.builder()
+								.active(true)
+								.claims(claimsOf(jwt))
+								.expiresIn(Math.max(0, Duration.between(now, jwt.getExpiresAt()).toSeconds()))
+								.build())
+				.toList();
+	}
+
+	// Access tokens are served from cache when already verified; the security epoch is rechecked by callers
+	private Jwt decodeAccessToken(String token) {
+		return verifiedTokenCache.get(token, this::decodeAndVerifySubject);
+	}
+
+	private Jwt decodeAndVerifySubject(String token) {
+		// Decode jwt (function include integrity verify & expiry verify)
+		Jwt jwt = nimbusJwtDecoder.decode(token);
+		// Subject still exists & token not issued before its sessions were killed?
+		Optional<User> user = userPrincipalCache.findUserByEmail(jwt.getSubject());
+		if (user.isEmpty() || securityEpochOf(user.get()) > securityEpochOf(jwt)) throw new JwtException("Invalid user");
+		// Return jwt
+		return jwt;
+	}
+
+	private boolean isSecurityEpochStale(Jwt jwt) {
+		String userId = jwt.getClaim("uid");
+		// Answered from memory while the table is seeded and subscribed
+		if (userSecurityEpochTable.isReady()) return userSecurityEpochTable.getEpoch(userId) > securityEpochOf(jwt);
+		// Otherwise fall back to the user record
+		return userPrincipalCache.findUserByEmail(jwt.getSubject())
+				.map(user -> !user.getEntityId().equals(userId) || securityEpochOf(user) > securityEpochOf(jwt))
+				.orElse(true);
+	}
+
+	// Registered timestamps as epoch seconds, as they appear in the token
+	private static Map<String, Object> claimsOf(Jwt jwt) {
+		Map<String, Object> claims = new LinkedHashMap<>();
+		jwt.getClaims().forEach((name, value) ->
+				claims.put(name, value instanceof Instant instant ? instant.getEpochSecond() : value));
+		return claims;
+	}
+
+	// Tokens issued before epochs existed carry none: treat as 0
+	private static long securityEpochOf(Jwt jwt) {
+		return jwt.getClaim("sep") instanceof Number epoch ? epoch.longValue() : 0L;
+	}
+
+	private static long securityEpochOf(User user) {
+		return Objects.requireNonNullElse(user.getSecurityEpoch(), 0L);
+	}
+
+	// Expiry a token id is revoked with: refresh exp on refresh, access iat + refreshable duration on logout
+	private Instant revocationExpiry(Jwt jwt, Boolean isRefreshToken) {
+		return isRefreshToken
+				? jwt.getExpiresAt()
+				: jwt.getIssuedAt().plus(REFRESHABLE_DURATION, ChronoUnit.SECONDS);
+	}
+
+	private String buildScope(List<String> roleIds) {
+		// Resolved from the in-memory role/permission graph
+		return rolePermissionGraph.buildScope(roleIds);
 	}
 }
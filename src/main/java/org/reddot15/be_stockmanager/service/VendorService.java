@@ -5,21 +5,33 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.reddot15.be_stockmanager.cache.PagePrefetcher;
+import org.reddot15.be_stockmanager.config.security.Authority;
+import org.reddot15.be_stockmanager.config.security.RequiresPermission;
 import org.reddot15.be_stockmanager.dto.request.VendorCreateRequest;
 import org.reddot15.be_stockmanager.dto.request.VendorUpdateRequest;
 import org.reddot15.be_stockmanager.dto.response.VendorResponse;
 import org.reddot15.be_stockmanager.dto.response.pagination.DDBPageResponse;
 import org.reddot15.be_stockmanager.entity.Vendor;
+import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
 import org.reddot15.be_stockmanager.exception.AppException;
 import org.reddot15.be_stockmanager.exception.ErrorCode;
 import org.reddot15.be_stockmanager.mapper.VendorMapper;
 import org.reddot15.be_stockmanager.repository.VendorRepository;
+import org.reddot15.be_stockmanager.util.CSVColumn;
 import org.reddot15.be_stockmanager.util.DynamoDbPaginationUtil;
-import org.springframework.security.access.prepost.PreAuthorize;
+import org.reddot15.be_stockmanager.util.PaginationTokenCodec;
+import org.reddot15.be_stockmanager.util.TextExportUtil;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -29,9 +41,11 @@ import java.util.Optional;
 public class VendorService {
 	VendorRepository vendorRepository;
 	VendorMapper vendorMapper;
+	PaginationTokenCodec paginationTokenCodec;
+	PagePrefetcher pagePrefetcher;
 	ObjectMapper objectMapper;
 
-	@PreAuthorize("hasAuthority('CREATE_VENDOR')")
+	@RequiresPermission(Authority.CREATE_VENDOR)
 	public VendorResponse create(VendorCreateRequest request) {
 		// Duplicate exception
 		Optional<Vendor> optionalVendor = vendorRepository.findVendorById(request.getEntityId());
@@ -40,25 +54,43 @@ public class VendorService {
 		// Mappping
 		Vendor entity = vendorMapper.toEntity(request);
 		// Save
-		return vendorMapper.toResponse(vendorRepository.saveVendor(entity));
+		Vendor savedVendor = vendorRepository.saveVendor(entity);
+		pagePrefetcher.invalidate("vendors");
+		return vendorMapper.toResponse(savedVendor);
 	}
 
-	@PreAuthorize("hasAuthority('VIEW_VENDOR')")
+	@RequiresPermission(Authority.VIEW_VENDOR)
 	public DDBPageResponse<VendorResponse> getVendors(String encodedNextPageToken, Integer limit) {
-		// Delegate to the generic pagination utility with the chosen function.
-		return DynamoDbPaginationUtil.paginate(
-				objectMapper,
-				encodedNextPageToken,
+		// Delegate to the generic pagination utility with the chosen function, through the prefetch stage
+		return pagePrefetcher.get("vendors", Collections.singletonList(limit), encodedNextPageToken, pageToken -> DynamoDbPaginationUtil.paginate(
+				paginationTokenCodec,
+				pageToken,
 				limit,
 				(ddbQueryLimit, currentExclusiveStartKey) ->
 						vendorRepository.findOneVendorsPage(
 								currentExclusiveStartKey,
 								ddbQueryLimit),
 				vendorMapper::toResponse
+		));
+	}
+
+	@RequiresPermission(Authority.VIEW_VENDOR)
+	public StreamingResponseBody exportVendors(TextExportUtil.Format format, boolean gzip) {
+		// Define the logic to fetch a page of vendors.
+		Function<Map<String, AttributeValue>, PaginatedResult<Vendor>> queryFunction =
+				(exclusiveStartKey) -> vendorRepository.findOneVendorsPage(exclusiveStartKey, 1000);
+		if (format == TextExportUtil.Format.NDJSON) {
+			return TextExportUtil.exportToNdjson(objectMapper, vendorMapper::toResponse, queryFunction, gzip);
+		}
+
+		List<CSVColumn<Vendor>> columns = List.of(
+				new CSVColumn<>("entity_id", Vendor::getEntityId),
+				new CSVColumn<>("name", Vendor::getName)
 		);
+		return TextExportUtil.exportToCsv(columns, queryFunction, gzip);
 	}
 
-	@PreAuthorize("hasAuthority('UPDATE_VENDOR')")
+	@RequiresPermission(Authority.UPDATE_VENDOR)
 	public VendorResponse update(String vendorId, VendorUpdateRequest request) {
 		// Check exists
 		Vendor entity = vendorRepository.findVendorById(vendorId)
@@ -66,16 +98,19 @@ public class VendorService {
 		// Updating
 		vendorMapper.updateEntity(entity, request);
 		// Save
-		return vendorMapper.toResponse(vendorRepository.saveVendor(entity));
+		Vendor savedVendor = vendorRepository.saveVendor(entity);
+		pagePrefetcher.invalidate("vendors");
+		return vendorMapper.toResponse(savedVendor);
 	}
 
-	@PreAuthorize("hasAuthority('DELETE_VENDOR')")
+	@RequiresPermission(Authority.DELETE_VENDOR)
 	public String delete(String vendorId) {
 		// Check exists
 		if (vendorRepository.findVendorById(vendorId).isEmpty())
 			throw new AppException(ErrorCode.VENDOR_NOT_FOUND);
 		// Delete
 		vendorRepository.deleteVendorById(vendorId);
+		pagePrefetcher.invalidate("vendors");
 		// Return ID
 		return vendorId;
 	}
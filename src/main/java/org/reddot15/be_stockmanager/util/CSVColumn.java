@@ -0,0 +1,7 @@
+package org.reddot15.be_stockmanager.util;
+
+import java.util.function.Function;
+
+// One exported CSV column: its header and how to read its value (printed with toString, null as empty) from an item
+public record CSVColumn<T>(String header, Function<T, Object> value) {
+}
@@ -0,0 +1,209 @@
+package org.reddot15.be_stockmanager.util;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.reddot15.be_stockmanager.dto.response.ImportErrorResponse;
+import org.reddot15.be_stockmanager.dto.response.ImportSummaryResponse;
+import org.reddot15.be_stockmanager.entity.batch.BatchWriteReport;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Streaming CSV import: records are parsed, mapped, validated and written batch by batch, so memory stays
+ * bounded by the batch size whatever the file size. Bad records are reported in the summary and do not stop
+ * the import; only an unreadable file does.
+ */
+@Slf4j
+@Builder
+public class CSVImportPipeline<T> {
+    // Map one record to an entity; a thrown exception rejects the record
+    private final Function<CSVRecord, T> recordMapper;
+    // Validate a batch and return what to write (may merge entities); rejected entities are reported
+    @Builder.Default
+    private final BatchStage<T> batchStage = (batch, reject) -> batch;
+    private final Function<List<T>, BatchWriteReport> batchWriter;
+    private final Function<T, String> idOf;
+    // Called with the entities actually written, batch by batch
+    @Builder.Default
+    private final Consumer<List<T>> onWritten = written -> {};
+    // Called with the running totals after each batch
+    @Builder.Default
+    private final Consumer<ImportSummaryResponse> onProgress = summary -> {};
+    @Builder.Default
+    private final int batchSize = 500;
+    @Builder.Default
+    private final int maxReportedErrors = 100;
+
+    @FunctionalInterface
+    public interface BatchStage<T> {
+        List<T> apply(List<T> batch, BiConsumer<T, String> reject);
+    }
+
+    public ImportSummaryResponse run(MultipartFile file) {
+        // File empty exception
+        if (file.isEmpty()) {
+            throw new AppException(ErrorCode.EMPTY_FILE);
+        }
+        try (InputStream inputStream = file.getInputStream()) {
+            return run(inputStream);
+        } catch (IOException e) {
+            log.error("Error reading CSV file: {}", e.getMessage(), e);
+            throw new AppException(ErrorCode.FILE_PARSE_FAILED);
+        }
+    }
+
+    public ImportSummaryResponse run(InputStream inputStream) {
+        Progress progress = new Progress();
+        long start = System.nanoTime();
+        try (CSVParser csvParser = CSVUtil.openParser(inputStream)) {
+            List<T> batch = new ArrayList<>(batchSize);
+            Map<T, Long> recordNumbers = new IdentityHashMap<>();
+            long parseStart = System.nanoTime();
+            // Parse lazily, one record at a time
+            for (CSVRecord csvRecord : csvParser) {
+                progress.totalRecords++;
+                try {
+                    T entity = recordMapper.apply(csvRecord);
+                    batch.add(entity);
+                    recordNumbers.put(entity, csvRecord.getRecordNumber());
+                } catch (RuntimeException e) {
+                    progress.rejected++;
+                    progress.error(csvRecord.getRecordNumber(), null, messageOf(e));
+                }
+                if (batch.size() == batchSize) {
+                    progress.parseNanos += System.nanoTime() - parseStart;
+                    processBatch(batch, recordNumbers, progress);
+                    onProgress.accept(summaryOf(progress, start));
+                    batch.clear();
+                    recordNumbers.clear();
+                    parseStart = System.nanoTime();
+                }
+            }
+            progress.parseNanos += System.nanoTime() - parseStart;
+            if (!batch.isEmpty()) processBatch(batch, recordNumbers, progress);
+        } catch (IOException | UncheckedIOException | IllegalStateException e) {
+            // Unreadable file or malformed CSV (commons-csv wraps IOExceptions raised while iterating)
+            log.error("Error parsing CSV file: {}", e.getMessage(), e);
+            throw new AppException(ErrorCode.FILE_PARSE_FAILED);
+        }
+
+        // Return
+        return summaryOf(progress, start);
+    }
+
+    private ImportSummaryResponse summaryOf(Progress progress, long start) {
+        return ImportSummaryResponse.builder()
+                .totalRecords(progress.totalRecords)
+                .imported(progress.imported)
+                .rejected(progress.rejected)
+                .failed(progress.failed)
+                .batches(progress.batches)
+                .consumedCapacityUnits(progress.consumedCapacityUnits)
+                .parseMillis(progress.parseNanos / 1_000_000)
+                .validateMillis(progress.validateNanos / 1_000_000)
+                .writeMillis(progress.writeNanos / 1_000_000)
+                .totalMillis((System.nanoTime() - start) / 1_000_000)
+                .errors(List.copyOf(progress.errors))
+                .errorsTruncated(progress.errorsTruncated)
+                .build();
+    }
+
+    private void processBatch(List<T> batch, Map<T, Long> recordNumbers, Progress progress) {
+        progress.batches++;
+        // Validate
+        long validateStart = System.nanoTime();
+        Set<T> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<T> toWrite;
+        try {
+            toWrite = batchStage.apply(batch, (entity, message) -> {
+                if (rejected.add(entity))
+                    progress.error(recordNumbers.get(entity), idOf.apply(entity), message);
+            });
+        } catch (RuntimeException e) {
+            // The whole batch could not be validated
+            batch.forEach(entity -> {
+                if (rejected.add(entity))
+                    progress.error(recordNumbers.get(entity), idOf.apply(entity), messageOf(e));
+            });
+            toWrite = List.of();
+        }
+        progress.rejected += rejected.size();
+        progress.validateNanos += System.nanoTime() - validateStart;
+
+        // Write
+        long writeStart = System.nanoTime();
+        Set<String> failedIds = new HashSet<>();
+        if (!toWrite.isEmpty()) {
+            BatchWriteReport report = batchWriter.apply(toWrite);
+            progress.consumedCapacityUnits += report.getConsumedCapacityUnits();
+            report.getFailures().forEach(failure -> failure.getEntityIds().forEach(entityId -> {
+                failedIds.add(entityId);
+                progress.error(null, entityId, failure.getMessage());
+            }));
+            onWritten.accept(toWrite.stream()
+                    .filter(entity -> !failedIds.contains(idOf.apply(entity)))
+                    .toList());
+        }
+        progress.writeNanos += System.nanoTime() - writeStart;
+
+        // Count records, several of which may have been merged into one written entity.
+        // Ids are read after the write, which may have assigned them.
+        Map<String, Long> recordsPerFailedId = new HashMap<>();
+        for (T entity : batch) {
+            if (rejected.contains(entity)) continue;
+            String entityId = idOf.apply(entity);
+            if (failedIds.contains(entityId)) recordsPerFailedId.merge(entityId, 1L, Long::sum);
+            else progress.imported++;
+        }
+        progress.failed += recordsPerFailedId.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static String messageOf(RuntimeException e) {
+        if (e instanceof AppException appException) return appException.getErrorCode().getMessage();
+        return "Invalid record: " + e.getMessage();
+    }
+
+    private final class Progress {
+        long totalRecords;
+        long imported;
+        long rejected;
+        long failed;
+        int batches;
+        double consumedCapacityUnits;
+        long parseNanos;
+        long validateNanos;
+        long writeNanos;
+        final List<ImportErrorResponse> errors = new ArrayList<>();
+        boolean errorsTruncated;
+
+        void error(Long recordNumber, String entityId, String message) {
+            if (errors.size() >= maxReportedErrors) {
+                errorsTruncated = true;
+                return;
+            }
+            errors.add(ImportErrorResponse.builder()
+                    .recordNumber(recordNumber)
+                    .entityId(entityId)
+                    .message(message)
+                    .build());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.reddot15.be_stockmanager.util;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
 import org.reddot15.be_stockmanager.dto.response.pagination.DDBPageResponse;
 import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
@@ -8,12 +9,37 @@ import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 public class DynamoDbPaginationUtil {
+    // DynamoDB's Limit bounds evaluated items, not returned ones: with a selective filter, ask for more
+    private static final int DEFAULT_QUERY_LIMIT_CAP = 100;
+    private static final int ADAPTIVE_QUERY_LIMIT_CAP = 1000;
+    // Weight of the latest round trip in the selectivity average
+    private static final double SELECTIVITY_ALPHA = 0.3;
+    private static final double MIN_SELECTIVITY = 0.01;
+    // Over-fetch a little more than the estimate to usually finish in one round trip
+    private static final double HEADROOM = 1.2;
+
+    // Observed returned/scanned ratio per query shape
+    private static final Map<String, Selectivity> SELECTIVITIES = new ConcurrentHashMap<>();
+
     public static <T, R> DDBPageResponse<R> paginate(
-            ObjectMapper objectMapper,
+            PaginationTokenCodec paginationTokenCodec,
+            String encodedNextPageToken,
+            Integer limit,
+            BiFunction<Integer, Map<String, AttributeValue>, PaginatedResult<T>> queryFunction,
+            Function<T, R> mapper) {
+        return paginate(paginationTokenCodec, null, encodedNextPageToken, limit, queryFunction, mapper);
+    }
+
+    // queryShape names the index and the filters in use (e.g. "products:keyword"); queries sharing one are
+    // expected to be similarly selective. Without a shape, Limit is the number of items still missing.
+    public static <T, R> DDBPageResponse<R> paginate(
+            PaginationTokenCodec paginationTokenCodec,
+            String queryShape,
             String encodedNextPageToken,
             Integer limit,
             BiFunction<Integer, Map<String, AttributeValue>, PaginatedResult<T>> queryFunction,
@@ -27,38 +53,58 @@ public class DynamoDbPaginationUtil {
         List<T> aggregatedItems = new ArrayList<>();
         Map<String, AttributeValue> currentExclusiveStartKey = null;
         boolean hasMore = true; // Initial assumption for the internal loop
+        Selectivity selectivity = queryShape != null
+                ? SELECTIVITIES.computeIfAbsent(queryShape, Selectivity::new)
+                : null;
+        int roundTrips = 0;
+        long scanned = 0;
 
         // Decode & Assign ExclusiveStartKey if exists using the utility
-        currentExclusiveStartKey = PaginationTokenUtil.decodeNextPageToken(encodedNextPageToken, objectMapper);
+        currentExclusiveStartKey = paginationTokenCodec.decode(encodedNextPageToken);
 
         // Loop to aggregate items until limit is met or no more data from DynamoDB
         while (aggregatedItems.size() < limit && hasMore) {
             // Determine the limit for the *current* internal DynamoDB query
-            int ddbQueryLimit = limit - aggregatedItems.size();
-            // Cap ddbQueryLimit to DynamoDB's max internal limit
-            if (ddbQueryLimit > 100) {
-                ddbQueryLimit = 100;
-            }
+            int missing = limit - aggregatedItems.size();
+            int ddbQueryLimit = selectivity != null
+                    ? selectivity.queryLimitFor(missing)
+                    : Math.min(missing, DEFAULT_QUERY_LIMIT_CAP);
 
             // Query DynamoDB using the provided functional interface
             PaginatedResult<T> pageResult = queryFunction.apply(ddbQueryLimit, currentExclusiveStartKey);
+            List<T> pageItems = pageResult.getItems();
+            roundTrips++;
+            int pageScanned = pageResult.getScannedCount() != null ? pageResult.getScannedCount() : pageItems.size();
+            scanned += pageScanned;
+            if (selectivity != null) selectivity.record(pageItems.size(), pageScanned);
 
-            // Add all items retrieved from this single DynamoDB query
-            aggregatedItems.addAll(pageResult.getItems());
-
-            // Update currentExclusiveStartKey for the next potential iteration of the while loop
-            currentExclusiveStartKey = pageResult.getLastEvaluatedKey();
+            // Over-fetched: keep what the page needs and resume right after the last item kept
+            if (pageItems.size() > missing && pageResult.getStartKeyAfter() != null) {
+                aggregatedItems.addAll(pageItems.subList(0, missing));
+                currentExclusiveStartKey = pageResult.getStartKeyAfter().apply(pageItems.get(missing - 1));
+            } else {
+                // Add all items retrieved from this single DynamoDB query
+                aggregatedItems.addAll(pageItems);
+                // Update currentExclusiveStartKey for the next potential iteration of the while loop
+                currentExclusiveStartKey = pageResult.getLastEvaluatedKey();
+            }
             // 'hasMore' for the loop is true if DynamoDB returned a LastEvaluatedKey
             hasMore = currentExclusiveStartKey != null && !currentExclusiveStartKey.isEmpty();
         }
 
+        // Record the cost of this page
+        if (selectivity != null) {
+            selectivity.roundTrips.record(roundTrips);
+            if (!aggregatedItems.isEmpty()) selectivity.scannedPerReturned.record((double) scanned / aggregatedItems.size());
+        }
+
         // Map the aggregated items to the response DTO.
         List<R> mappedItems = aggregatedItems.stream()
                 .map(mapper)
                 .toList();
 
         // Encode LastEvaluatedKey for the response token based on the final currentExclusiveStartKey from the loop
-        String newNextPageToken = PaginationTokenUtil.encodeLastEvaluatedKey(currentExclusiveStartKey, objectMapper);
+        String newNextPageToken = paginationTokenCodec.encode(currentExclusiveStartKey);
 
         // Return the final PageResponse
         return DDBPageResponse.<R>builder()
@@ -67,4 +113,34 @@ public class DynamoDbPaginationUtil {
                 .hasMore(hasMore)
                 .build();
     }
-}
\ No newline at end of file
+
+    private static final class Selectivity {
+        final DistributionSummary roundTrips;
+        final DistributionSummary scannedPerReturned;
+        // Returned/scanned, starting as if nothing were filtered out
+        volatile double estimate = 1.0;
+
+        Selectivity(String queryShape) {
+            roundTrips = DistributionSummary.builder("pagination.round_trips")
+                    .description("DynamoDB queries issued to fill one page")
+                    .tag("shape", queryShape)
+                    .register(Metrics.globalRegistry);
+            scannedPerReturned = DistributionSummary.builder("pagination.scanned_per_returned")
+                    .description("Items evaluated by DynamoDB per item returned in a page")
+                    .tag("shape", queryShape)
+                    .register(Metrics.globalRegistry);
+        }
+
+        int queryLimitFor(int missing) {
+            double expected = missing / Math.max(estimate, MIN_SELECTIVITY) * HEADROOM;
+            return (int) Math.min(Math.max(missing, Math.ceil(expected)), ADAPTIVE_QUERY_LIMIT_CAP);
+        }
+
+        void record(int returned, int scanned) {
+            // Pages cut short by the 1MB response cap still give the ratio
+            if (scanned <= 0) return;
+            double observed = Math.min(1.0, (double) returned / scanned);
+            estimate = estimate + SELECTIVITY_ALPHA * (observed - estimate);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.reddot15.be_stockmanager.util;
+
+import java.util.function.Function;
+
+// One exported column: its header, how to read its cell (String, Number or null) from an item, and its width cap
+public record ExcelColumn<T>(String header, Function<T, Object> value, int maxWidth) {
+    // Width cap in characters when none is given
+    public static final int DEFAULT_MAX_WIDTH = 60;
+
+    public ExcelColumn(String header, Function<T, Object> value) {
+        this(header, value, DEFAULT_MAX_WIDTH);
+    }
+}
@@ -2,110 +2,208 @@ package org.reddot15.be_stockmanager.util;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.DeferredSXSSFSheet;
+import org.apache.poi.xssf.streaming.DeferredSXSSFWorkbook;
 import org.apache.poi.xssf.streaming.SXSSFSheet;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
 import org.reddot15.be_stockmanager.exception.AppException;
 import org.reddot15.be_stockmanager.exception.ErrorCode;
 import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.function.BiConsumer;
 import java.util.function.Function;
 
+/**
+ * Streams an XLSX export straight to the response, page after page from DynamoDB. How column widths are
+ * computed decides how the workbook is written, see {@link ColumnWidth}.
+ */
 @Slf4j
 public class ExcelUtil {
-    public static <T> Path exportToExcel(
-            String fileNamePrefix,
-            List<String> headers,
+    // Rows kept in memory before being flushed to the output
+    private static final int ROW_ACCESS_WINDOW = 100;
+    // Narrowest column, in characters
+    private static final int MIN_COLUMN_WIDTH = 8;
+
+    /**
+     * Column widths are written before the rows in the sheet XML, so a width known only after the last row
+     * forces the rows to be spooled (POI's SXSSF temp file) until the end.
+     */
+    public enum ColumnWidth {
+        // Header and first page character lengths; rows are generated while writing, nothing is spooled
+        SAMPLED,
+        // Longest character length over every row; cheap per cell, but rows are spooled
+        MAX,
+        // POI auto-sizing from font metrics of every row; closest fit, by far the most CPU, rows are spooled
+        AUTO;
+
+        public static ColumnWidth fromParam(String value) {
+            if (value == null || value.isBlank()) return SAMPLED;
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new AppException(ErrorCode.INVALID_REQUEST);
+            }
+        }
+    }
+
+    public static <T> StreamingResponseBody exportToExcel(
+            String sheetName,
+            List<ExcelColumn<T>> columns,
             Function<Map<String, AttributeValue>, PaginatedResult<T>> queryFunction,
-            BiConsumer<Row, T> rowMapper
+            ColumnWidth columnWidth
     ) {
-        // Create a temporary file on the local disk to write the Excel data to.
-        Path tempFile = createTempFile(fileNamePrefix);
-
-        // Use SXSSFWorkbook for streaming large datasets.
-        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100);
-             FileOutputStream fos = new FileOutputStream(tempFile.toFile())) {
-
-            SXSSFSheet sheet = workbook.createSheet(StringUtils.capitalize(fileNamePrefix));
-            // Auto-size columns for better readability
-            sheet.trackAllColumnsForAutoSizing();
-
-            // Create and style the header row.
-            createHeaderRow(sheet, headers);
-
-            int rowIdx = 1; // Start data from the second row.
-            Map<String, AttributeValue> exclusiveStartKey = null;
-
-            // Paginate through the data source and write to the sheet.
-            do {
-                // Fetch a chunk of records from DynamoDB
-                PaginatedResult<T> pageResult = queryFunction.apply(exclusiveStartKey);
-                List<T> items = pageResult.getItems();
-
-                // Write this chunk of records to the Excel sheet
-                for (T item : items) {
-                    Row row = sheet.createRow(rowIdx++);
-                    // Use the provided rowMapper to populate the cells.
-                    rowMapper.accept(row, item);
+        // Fetch the first page now: a failing query is still answered with an error response
+        PaginatedResult<T> firstPage = queryFunction.apply(null);
+
+        return outputStream -> {
+            try {
+                if (columnWidth == ColumnWidth.SAMPLED) {
+                    writeDeferred(outputStream, sheetName, columns, firstPage, queryFunction);
+                } else {
+                    writeSpooled(outputStream, sheetName, columns, firstPage, queryFunction, columnWidth);
                 }
+            } catch (IOException | RuntimeException e) {
+                // The response is already committed: the client sees a truncated download
+                log.error("Failed to stream Excel export: {}", e.getMessage(), e);
+                throw e;
+            }
+        };
+    }
 
-                exclusiveStartKey = pageResult.getLastEvaluatedKey();
+    // Rows are generated while the sheet is written out and the package is zipped straight to the response
+    private static <T> void writeDeferred(
+            OutputStream outputStream,
+            String sheetName,
+            List<ExcelColumn<T>> columns,
+            PaginatedResult<T> firstPage,
+            Function<Map<String, AttributeValue>, PaginatedResult<T>> queryFunction
+    ) throws IOException {
+        try (DeferredSXSSFWorkbook workbook = new DeferredSXSSFWorkbook(ROW_ACCESS_WINDOW)) {
+            DeferredSXSSFSheet sheet = workbook.createSheet(StringUtils.capitalize(sheetName));
+            // Widths precede the rows: size them from the header and the first page
+            int[] lengths = headerLengths(columns);
+            for (T item : firstPage.getItems()) {
+                trackLengths(lengths, columns, item);
+            }
+            setColumnWidths(sheet, columns, lengths);
 
-            } while (exclusiveStartKey != null && !exclusiveStartKey.isEmpty());
+            sheet.setRowGenerator(generatedSheet -> writeRows(generatedSheet, columns, firstPage, queryFunction, null));
+            workbook.writeAvoidingTempFiles(outputStream);
+        }
+    }
 
-            // Auto-size columns after all data is written
-            for (int i = 0; i < headers.size(); i++) {
-                sheet.autoSizeColumn(i);
+    // Rows are spooled by POI, widths are set once every row has been seen
+    private static <T> void writeSpooled(
+            OutputStream outputStream,
+            String sheetName,
+            List<ExcelColumn<T>> columns,
+            PaginatedResult<T> firstPage,
+            Function<Map<String, AttributeValue>, PaginatedResult<T>> queryFunction,
+            ColumnWidth columnWidth
+    ) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+        try {
+            SXSSFSheet sheet = workbook.createSheet(StringUtils.capitalize(sheetName));
+            if (columnWidth == ColumnWidth.AUTO) {
+                sheet.trackAllColumnsForAutoSizing();
+                writeRows(sheet, columns, firstPage, queryFunction, null);
+                for (int col = 0; col < columns.size(); col++) {
+                    sheet.autoSizeColumn(col);
+                    sheet.setColumnWidth(col, Math.min(sheet.getColumnWidth(col), columns.get(col).maxWidth() * 256));
+                }
+            } else {
+                int[] lengths = headerLengths(columns);
+                writeRows(sheet, columns, firstPage, queryFunction, lengths);
+                setColumnWidths(sheet, columns, lengths);
             }
-
-            // Write the workbook content to the file output stream
-            workbook.write(fos);
-        } catch (IOException e) {
-            log.error("Failed to write data to Excel file: " + e.getMessage());
-            // Clean up the created temp file on failure
-            cleanupTempFile(tempFile);
-            throw new AppException(ErrorCode.FILE_EXPORT_FAILED);
+            workbook.write(outputStream);
+        } finally {
+            // Delete the spooled sheet data
+            workbook.dispose();
+            workbook.close();
         }
+    }
 
-        // Return
-        return tempFile;
+    // Writes the header and every page; tracks character lengths when given an array
+    private static <T> void writeRows(
+            SXSSFSheet sheet,
+            List<ExcelColumn<T>> columns,
+            PaginatedResult<T> firstPage,
+            Function<Map<String, AttributeValue>, PaginatedResult<T>> queryFunction,
+            int[] lengths
+    ) {
+        // Cells without a style fall back to their column's style, which POI looks up in the column
+        // definitions for every cell written once widths are set: give them the default style explicitly
+        CellStyle style = sheet.getWorkbook().getCellStyleAt(0);
+
+        // Create the header row.
+        createHeaderRow(sheet, columns, style);
+
+        int rowIdx = 1; // Start data from the second row.
+        PaginatedResult<T> pageResult = firstPage;
+        // Paginate through the data source and write to the sheet.
+        while (true) {
+            // Write this chunk of records to the Excel sheet
+            for (T item : pageResult.getItems()) {
+                createDataRow(sheet.createRow(rowIdx++), columns, item, style, lengths);
+            }
+            Map<String, AttributeValue> exclusiveStartKey = pageResult.getLastEvaluatedKey();
+            if (exclusiveStartKey == null || exclusiveStartKey.isEmpty()) break;
+            // Fetch the next chunk of records from DynamoDB
+            pageResult = queryFunction.apply(exclusiveStartKey);
+        }
     }
 
     // Creates the header row in the given sheet.
-    private static void createHeaderRow(SXSSFSheet sheet, List<String> headers) {
+    private static <T> void createHeaderRow(SXSSFSheet sheet, List<ExcelColumn<T>> columns, CellStyle style) {
         Row headerRow = sheet.createRow(0);
-        for (int col = 0; col < headers.size(); col++) {
+        for (int col = 0; col < columns.size(); col++) {
             Cell cell = headerRow.createCell(col);
-            cell.setCellValue(headers.get(col));
-            // Optionally, add styling to the header here.
+            cell.setCellStyle(style);
+            cell.setCellValue(columns.get(col).header());
         }
     }
 
-    // Creates a temporary file for the export.
-    private static Path createTempFile(String prefix) {
-        try {
-            return Files.createTempFile(prefix + "-", ".xlsx");
-        } catch (IOException e) {
-            log.error("Failed to create temporary file for export: {}", e.getMessage(), e);
-            throw new AppException(ErrorCode.FILE_CREATION_FAILED);
+    private static <T> void createDataRow(Row row, List<ExcelColumn<T>> columns, T item, CellStyle style, int[] lengths) {
+        for (int col = 0; col < columns.size(); col++) {
+            Object value = columns.get(col).value().apply(item);
+            if (value == null) continue;
+            Cell cell = row.createCell(col);
+            cell.setCellStyle(style);
+            if (value instanceof Number number) {
+                cell.setCellValue(number.doubleValue());
+            } else {
+                cell.setCellValue(value.toString());
+            }
+            if (lengths != null) lengths[col] = Math.max(lengths[col], value.toString().length());
         }
     }
 
-    // Deletes the temporary file in case of an error.
-    private static void cleanupTempFile(Path path) {
-        try {
-            Files.deleteIfExists(path);
-        } catch (IOException e) {
-            log.error("Failed to clean up temporary file: {}", path, e);
+    private static <T> int[] headerLengths(List<ExcelColumn<T>> columns) {
+        return columns.stream().mapToInt(column -> column.header().length()).toArray();
+    }
+
+    private static <T> void trackLengths(int[] lengths, List<ExcelColumn<T>> columns, T item) {
+        for (int col = 0; col < columns.size(); col++) {
+            Object value = columns.get(col).value().apply(item);
+            if (value != null) lengths[col] = Math.max(lengths[col], value.toString().length());
+        }
+    }
+
+    private static <T> void setColumnWidths(SXSSFSheet sheet, List<ExcelColumn<T>> columns, int[] lengths) {
+        for (int col = 0; col < columns.size(); col++) {
+            // In 1/256 of a character, plus some padding
+            int width = Math.min(Math.max(lengths[col] + 2, MIN_COLUMN_WIDTH), columns.get(col).maxWidth());
+            sheet.setColumnWidth(col, width * 256);
         }
     }
 }
@@ -0,0 +1,171 @@
+package org.reddot15.be_stockmanager.util;
+
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes a LastEvaluatedKey as a signed, versioned binary token:
+ * <pre>
+ * version | count | (name, type, value)* | HMAC-SHA256 truncated to 12 bytes
+ * </pre>
+ * Names common to MasterData keys are written as a one-byte reference, other names and values are
+ * length-prefixed UTF-8. Attribute types are stored explicitly, so a string that looks like a number stays a string.
+ */
+public class PaginationTokenCodec {
+    private static final byte VERSION = 1;
+    private static final int MAC_LENGTH = 12;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    // Index + 1 is the name's reference, 0 introduces a literal name; append only
+    private static final List<String> KNOWN_NAMES = List.of(
+            "pk", "entity_id", "sale_price", "category_name", "created_at");
+
+    private static final byte TYPE_S = 1;
+    private static final byte TYPE_N = 2;
+    private static final byte TYPE_B = 3;
+    private static final byte TYPE_BOOL_FALSE = 4;
+    private static final byte TYPE_BOOL_TRUE = 5;
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    public PaginationTokenCodec(byte[] signingKey) {
+        this.key = new SecretKeySpec(signingKey, MAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(MAC_ALGORITHM + " not available", e);
+            }
+        });
+    }
+
+    public String encode(Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+        if (lastEvaluatedKey.size() > 255) {
+            throw new AppException(ErrorCode.SERIALIZE_PAGINATION_TOKEN_FAILED);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(VERSION);
+        out.write(lastEvaluatedKey.size());
+        lastEvaluatedKey.forEach((name, value) -> {
+            // Name
+            int reference = KNOWN_NAMES.indexOf(name) + 1;
+            out.write(reference);
+            if (reference == 0) writeBytes(out, name.getBytes(StandardCharsets.UTF_8));
+            // Typed value
+            if (value.s() != null) {
+                out.write(TYPE_S);
+                writeBytes(out, value.s().getBytes(StandardCharsets.UTF_8));
+            } else if (value.n() != null) {
+                out.write(TYPE_N);
+                writeBytes(out, value.n().getBytes(StandardCharsets.US_ASCII));
+            } else if (value.b() != null) {
+                out.write(TYPE_B);
+                writeBytes(out, value.b().asByteArray());
+            } else if (value.bool() != null) {
+                out.write(value.bool() ? TYPE_BOOL_TRUE : TYPE_BOOL_FALSE);
+            } else {
+                // Unsupported exception
+                throw new AppException(ErrorCode.UNSUPPORT_DYNAMODB_TYPE);
+            }
+        });
+        // Sign
+        byte[] body = out.toByteArray();
+        byte[] token = Arrays.copyOf(body, body.length + MAC_LENGTH);
+        System.arraycopy(sign(body, body.length), 0, token, body.length, MAC_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    public Map<String, AttributeValue> decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(token);
+            // Verify signature before reading anything else
+            int bodyLength = bytes.length - MAC_LENGTH;
+            if (bodyLength < 2 || !MessageDigest.isEqual(
+                    sign(bytes, bodyLength), Arrays.copyOfRange(bytes, bodyLength, bytes.length)))
+                throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+            ByteBuffer in = ByteBuffer.wrap(bytes, 0, bodyLength);
+            if (in.get() != VERSION)
+                throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+            int count = Byte.toUnsignedInt(in.get());
+            Map<String, AttributeValue> lastEvaluatedKey = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                // Name
+                int reference = Byte.toUnsignedInt(in.get());
+                String name = reference == 0
+                        ? new String(readBytes(in), StandardCharsets.UTF_8)
+                        : KNOWN_NAMES.get(reference - 1);
+                // Typed value
+                AttributeValue value = switch (in.get()) {
+                    case TYPE_S -> AttributeValue.fromS(new String(readBytes(in), StandardCharsets.UTF_8));
+                    case TYPE_N -> AttributeValue.fromN(new String(readBytes(in), StandardCharsets.US_ASCII));
+                    case TYPE_B -> AttributeValue.fromB(SdkBytes.fromByteArray(readBytes(in)));
+                    case TYPE_BOOL_FALSE -> AttributeValue.fromBool(false);
+                    case TYPE_BOOL_TRUE -> AttributeValue.fromBool(true);
+                    default -> throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+                };
+                lastEvaluatedKey.put(name, value);
+            }
+            if (in.hasRemaining())
+                throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+            return lastEvaluatedKey;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | BufferUnderflowException e) {
+            // Invalid Base64 or truncated body
+            throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+        }
+    }
+
+    private byte[] sign(byte[] bytes, int length) {
+        Mac mac = macs.get();
+        mac.update(bytes, 0, length);
+        return Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+    }
+
+    // Unsigned LEB128 length, then the bytes
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        int length = bytes.length;
+        while (length >= 0x80) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 21) throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+            byte next = in.get();
+            length |= (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) break;
+        }
+        if (length > in.remaining()) throw new AppException(ErrorCode.INVALID_PAGINATION_TOKEN);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,201 @@
+package org.reddot15.be_stockmanager.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams an export as CSV or NDJSON straight to the response, page after page from DynamoDB, optionally
+ * gzip-encoded. Only one page is held in memory at a time.
+ */
+@Slf4j
+public class TextExportUtil {
+    // Output buffer, also the gzip deflate buffer
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String mediaType;
+        private final String extension;
+
+        Format(String mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+
+        public static Format fromParam(String value) {
+            if (value == null || value.isBlank()) return CSV;
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new AppException(ErrorCode.INVALID_REQUEST);
+            }
+        }
+    }
+
+    // CSV with a header row, in the same layout the CSV import reads
+    public static <T> StreamingResponseBody exportToCsv(
+            List<CSVColumn<T>> columns,
+            Function<Map<String, AttributeValue>, PaginatedResult<T>> queryFunction,
+            boolean gzip
+    ) {
+        // Fetch the first page now: a failing query is still answered with an error response
+        PaginatedResult<T> firstPage = queryFunction.apply(null);
+        String[] headers = columns.stream().map(CSVColumn::header).toArray(String[]::new);
+
+        return outputStream -> stream(outputStream, gzip, out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.builder().setHeader(headers).build());
+            Object[] values = new Object[columns.size()];
+            forEachItem(firstPage, queryFunction, item -> {
+                for (int col = 0; col < values.length; col++) {
+                    values[col] = columns.get(col).value().apply(item);
+                }
+                printRecord(printer, values);
+            });
+            // Flush without closing: the servlet output stream is not ours
+            printer.flush();
+        });
+    }
+
+    // One JSON document per line, serialized like the API responses
+    public static <T, R> StreamingResponseBody exportToNdjson(
+            ObjectMapper objectMapper,
+            Function<T, R> toResponse,
+            Function<Map<String, AttributeValue>, PaginatedResult<T>> queryFunction,
+            boolean gzip
+    ) {
+        // Fetch the first page now: a failing query is still answered with an error response
+        PaginatedResult<T> firstPage = queryFunction.apply(null);
+        // Flushing after each value would send one chunk per line
+        ObjectWriter objectWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        return outputStream -> stream(outputStream, gzip, out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Lines are separated explicitly, not with the default space between root values
+            generator.setRootValueSeparator(null);
+            forEachItem(firstPage, queryFunction, item -> {
+                try {
+                    objectWriter.writeValue(generator, toResponse.apply(item));
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.close();
+        });
+    }
+
+    public static ResponseEntity<StreamingResponseBody> toResponse(
+            String fileName,
+            Format format,
+            boolean gzip,
+            StreamingResponseBody body
+    ) {
+        // Set HTTP headers for the file download response
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName + "." + format.extension);
+        headers.add(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate");
+        headers.add(HttpHeaders.PRAGMA, "no-cache");
+        headers.add(HttpHeaders.EXPIRES, "0");
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        // Chunked, the length is not known upfront
+        return ResponseEntity.ok()
+                .headers(headers)
+                .contentType(MediaType.parseMediaType(format.mediaType + ";charset=UTF-8"))
+                .body(body);
+    }
+
+    // Whether the client accepts a gzip-encoded body
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) continue;
+            // "gzip;q=0" refuses it
+            return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static void stream(OutputStream outputStream, boolean gzip, BodyWriter bodyWriter) throws IOException {
+        try {
+            if (gzip) {
+                GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+                bodyWriter.write(gzipOutputStream);
+                // Write the gzip trailer without closing the servlet output stream
+                gzipOutputStream.finish();
+            } else {
+                bodyWriter.write(outputStream);
+            }
+            outputStream.flush();
+        } catch (UncheckedIOException e) {
+            log.error("Failed to stream export: {}", e.getCause().getMessage(), e);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            // The response is already committed: the client sees a truncated download
+            log.error("Failed to stream export: {}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    private static <T> void forEachItem(
+            PaginatedResult<T> firstPage,
+            Function<Map<String, AttributeValue>, PaginatedResult<T>> queryFunction,
+            Consumer<T> action
+    ) {
+        PaginatedResult<T> pageResult = firstPage;
+        // Paginate through the data source
+        while (true) {
+            pageResult.getItems().forEach(action);
+            Map<String, AttributeValue> exclusiveStartKey = pageResult.getLastEvaluatedKey();
+            if (exclusiveStartKey == null || exclusiveStartKey.isEmpty()) break;
+            // Fetch the next chunk of records from DynamoDB
+            pageResult = queryFunction.apply(exclusiveStartKey);
+        }
+    }
+
+    private static void printRecord(CSVPrinter printer, Object[] values) {
+        try {
+            printer.printRecord(values);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
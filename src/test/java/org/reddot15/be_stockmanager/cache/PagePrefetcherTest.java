@@ -0,0 +1,83 @@
+package org.reddot15.be_stockmanager.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reddot15.be_stockmanager.dto.response.pagination.DDBPageResponse;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PagePrefetcherTest {
+    private PagePrefetcher pagePrefetcher;
+
+    @BeforeEach
+    void setUp() {
+        pagePrefetcher = new PagePrefetcher(new ObjectMapper(), new SimpleMeterRegistry(), true, 1 << 20, 60_000, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pagePrefetcher.shutdown();
+    }
+
+    @Test
+    void followUpPageIsServedFromThePrefetch() {
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, DDBPageResponse<String>> loader = token -> {
+            loads.incrementAndGet();
+            return token == null ? page("first", "T2") : page("second", null);
+        };
+        List<Object> query = Arrays.asList("milk", null);
+
+        pagePrefetcher.get("products", query, null, loader);
+        DDBPageResponse<String> second = pagePrefetcher.get("products", query, "T2", loader);
+
+        assertThat(second.getItems()).containsExactly("second");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void queriesWithTheSameTextAreNotConfused() {
+        // keyword "a, b" against keyword "a" + category "b": the same string once joined
+        pagePrefetcher.get("products", Arrays.asList("a, b", null), null,
+                token -> token == null ? page("first", "T2") : page("keyword a, b", null));
+        DDBPageResponse<String> second = pagePrefetcher.get("products", Arrays.asList("a", "b"), "T2",
+                token -> page("keyword a in category b", null));
+
+        assertThat(second.getItems()).containsExactly("keyword a in category b");
+    }
+
+    @Test
+    void writeDropsPrefetchedPages() {
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, DDBPageResponse<String>> loader = token -> {
+            loads.incrementAndGet();
+            return token == null ? page("first", "T2") : page("second", null);
+        };
+        List<Object> query = List.of("milk");
+
+        pagePrefetcher.get("products", query, null, loader);
+        // Let the prefetch finish before the write
+        pagePrefetcher.get("products", query, "T2", token -> page("unused", null));
+        pagePrefetcher.invalidate("products");
+        loads.set(0);
+        pagePrefetcher.get("products", query, "T2", loader);
+
+        assertThat(loads).hasValue(1);
+    }
+
+    private static DDBPageResponse<String> page(String item, String nextToken) {
+        return DDBPageResponse.<String>builder()
+                .items(List.of(item))
+                .encodedNextPageToken(nextToken)
+                .hasMore(nextToken != null)
+                .build();
+    }
+}
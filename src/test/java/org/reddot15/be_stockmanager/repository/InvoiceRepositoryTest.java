@@ -0,0 +1,124 @@
+package org.reddot15.be_stockmanager.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.reddot15.be_stockmanager.entity.Invoice;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class InvoiceRepositoryTest {
+    private static final String CREATED_AT = "2024-05-10T08:30:00";
+
+    private DynamoDbTable<Invoice> table;
+    private InvoiceBucketRepository invoiceBucketRepository;
+    private InvoiceAliasRepository invoiceAliasRepository;
+    private InvoiceRepository invoiceRepository;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        DynamoDbEnhancedClient enhancedClient = mock(DynamoDbEnhancedClient.class);
+        table = mock(DynamoDbTable.class);
+        doReturn(table).when(enhancedClient).table(anyString(), any(TableSchema.class));
+        when(table.tableName()).thenReturn("MasterData");
+        when(table.tableSchema()).thenReturn(TableSchema.fromBean(Invoice.class));
+        invoiceBucketRepository = mock(InvoiceBucketRepository.class);
+        invoiceAliasRepository = mock(InvoiceAliasRepository.class);
+        invoiceRepository = new InvoiceRepository(
+                enhancedClient,
+                mock(DynamoDbClient.class),
+                invoiceBucketRepository,
+                invoiceAliasRepository,
+                mock(ExecutorService.class),
+                InvoiceRepository.BucketGranularity.MONTH,
+                true);
+    }
+
+    @Test
+    void underscoreIdIsPrefixedWithItsBucket() {
+        Invoice invoice = Invoice.builder().entityId("INV_001").createdAt(CREATED_AT).build();
+
+        Put put = invoiceRepository.newInvoicePut(invoice);
+
+        assertThat(invoice.getEntityId()).isEqualTo("2024-05_INV_001");
+        assertThat(invoice.getPk()).isEqualTo("Invoices#2024-05");
+        assertThat(put.item().get("pk").s()).isEqualTo("Invoices#2024-05");
+        verify(invoiceBucketRepository).registerBucket("Invoices#2024-05");
+    }
+
+    @Test
+    void idPrefixedWithItsOwnBucketIsKept() {
+        Invoice invoice = Invoice.builder().entityId("2024-05_INV_001").createdAt(CREATED_AT).build();
+
+        invoiceRepository.newInvoicePut(invoice);
+
+        assertThat(invoice.getEntityId()).isEqualTo("2024-05_INV_001");
+        assertThat(invoice.getPk()).isEqualTo("Invoices#2024-05");
+    }
+
+    @Test
+    void idPrefixedWithAnotherBucketIsPrefixedAgain() {
+        Invoice invoice = Invoice.builder().entityId("2024-04_INV_001").createdAt(CREATED_AT).build();
+
+        invoiceRepository.newInvoicePut(invoice);
+
+        assertThat(invoice.getEntityId()).isEqualTo("2024-05_2024-04_INV_001");
+        assertThat(invoice.getPk()).isEqualTo("Invoices#2024-05");
+    }
+
+    @Test
+    void bucketedIdIsReadFromItsBucket() {
+        invoiceRepository.findInvoiceById("2024-05_INV_001");
+
+        ArgumentCaptor<Key> key = ArgumentCaptor.forClass(Key.class);
+        verify(table).getItem(key.capture());
+        assertThat(key.getValue().partitionKeyValue().s()).isEqualTo("Invoices#2024-05");
+        assertThat(key.getValue().sortKeyValue().orElseThrow().s()).isEqualTo("2024-05_INV_001");
+    }
+
+    @Test
+    void underscoreIdWithoutBucketIsReadFromLegacyPartition() {
+        Invoice legacy = Invoice.builder().pk("Invoices").entityId("INV_001").createdAt(CREATED_AT).build();
+        when(table.getItem(any(Key.class))).thenReturn(legacy);
+
+        assertThat(invoiceRepository.findInvoiceById("INV_001")).contains(legacy);
+
+        ArgumentCaptor<Key> key = ArgumentCaptor.forClass(Key.class);
+        verify(table).getItem(key.capture());
+        assertThat(key.getValue().partitionKeyValue().s()).isEqualTo("Invoices");
+    }
+
+    @Test
+    void backfilledIdIsResolvedThroughItsAlias() {
+        Invoice moved = Invoice.builder()
+                .pk("Invoices#2024-05")
+                .entityId("2024-05_INV_001")
+                .createdAt(CREATED_AT)
+                .build();
+        when(invoiceAliasRepository.findInvoiceIdByLegacyId("INV_001")).thenReturn(Optional.of("2024-05_INV_001"));
+        when(table.getItem(any(Key.class))).thenAnswer(invocation -> {
+            Key key = invocation.getArgument(0);
+            return key.partitionKeyValue().s().equals("Invoices#2024-05") ? moved : null;
+        });
+
+        assertThat(invoiceRepository.findInvoiceById("INV_001")).contains(moved);
+        verifyNoInteractions(invoiceBucketRepository);
+    }
+}
@@ -0,0 +1,101 @@
+package org.reddot15.be_stockmanager.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reddot15.be_stockmanager.entity.Product;
+import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+class ProductRepositoryTest {
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void setUp() {
+        DynamoDbEnhancedClient enhancedClient = mock(DynamoDbEnhancedClient.class);
+        doReturn(mock(DynamoDbTable.class)).when(enhancedClient).table(anyString(), any(TableSchema.class));
+        // Shard queries run inline, in shard order
+        ExecutorService dynamoDbExecutor = mock(ExecutorService.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(dynamoDbExecutor).execute(any(Runnable.class));
+        productRepository = spy(new ProductRepository(enhancedClient, mock(DynamoDbClient.class), dynamoDbExecutor, 2));
+    }
+
+    @Test
+    void mergedPageResumesAfterEqualProductsOfDifferentShards() {
+        // P1 and P2 differ only by id, so Product.equals holds between them
+        Product p1 = product("P1", 10.0);
+        Product p2 = product("P2", 10.0);
+        Product p3 = product("P3", 20.0);
+        Product p4 = product("P4", 20.0);
+        doReturn(shardPage(List.of(p1, p3)), shardPage(List.of(p2, p4)))
+                .when(productRepository).findOnePage(anyString(), any(), any(), any(), anyInt());
+
+        PaginatedResult<Product> page = productRepository.findOneProductsPage(null, null, null, null, null, 3);
+
+        assertThat(page.getItems()).extracting(Product::getEntityId).containsExactly("P1", "P2", "P3");
+        Map<String, AttributeValue> afterP2 = page.getStartKeyAfter().apply(p2);
+        assertThat(afterP2.get("0:entity_id").s()).isEqualTo("P1");
+        assertThat(afterP2.get("1:entity_id").s()).isEqualTo("P2");
+        Map<String, AttributeValue> afterP1 = page.getStartKeyAfter().apply(p1);
+        assertThat(afterP1.get("0:entity_id").s()).isEqualTo("P1");
+        assertThat(afterP1).doesNotContainKey("1:entity_id");
+    }
+
+    @Test
+    void mergedPageStopsAtTheLowestUnreadShardKey() {
+        Product p1 = product("P1", 10.0);
+        Product p2 = product("P2", 30.0);
+        Product p3 = product("P3", 20.0);
+        doReturn(shardPage(List.of(p1, p2)), shardPage(List.of(p3)))
+                .when(productRepository).findOnePage(anyString(), any(), any(), any(), anyInt());
+
+        PaginatedResult<Product> page = productRepository.findOneProductsPage(null, null, null, null, null, 3);
+
+        // Shard 1 may hold more items from 20.0 on: P2 (30.0) must wait for the next page
+        assertThat(page.getItems()).extracting(Product::getEntityId).containsExactly("P1", "P3");
+        assertThat(page.getLastEvaluatedKey().get("0:entity_id").s()).isEqualTo("P1");
+        assertThat(page.getLastEvaluatedKey().get("1:entity_id").s()).isEqualTo("P3");
+    }
+
+    private static Product product(String entityId, double salePrice) {
+        return Product.builder()
+                .entityId(entityId)
+                .vendorId("V1")
+                .name("Same name")
+                .categoryName("Same category")
+                .importPrice(5.0)
+                .salePrice(salePrice)
+                .vat(0.1)
+                .build();
+    }
+
+    // A shard page with more items after its last one
+    private static PaginatedResult<Product> shardPage(List<Product> items) {
+        Product last = items.getLast();
+        return PaginatedResult.<Product>builder()
+                .items(items)
+                .lastEvaluatedKey(Map.of(
+                        "entity_id", AttributeValue.fromS(last.getEntityId()),
+                        "sale_price", AttributeValue.fromN(last.getSalePrice().toString())))
+                .build();
+    }
+}
@@ -0,0 +1,183 @@
+package org.reddot15.be_stockmanager.util;
+
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.reddot15.be_stockmanager.dto.response.ImportErrorResponse;
+import org.reddot15.be_stockmanager.dto.response.ImportSummaryResponse;
+import org.reddot15.be_stockmanager.entity.batch.BatchWriteReport;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CSVImportPipelineTest {
+
+    @Test
+    void everyRecordIsCountedOnce() {
+        // r3 is unparseable, r4 is rejected by validation, r5 and r6 fail to write
+        String csv = """
+                id,qty
+                r1,1
+                r2,2
+                r3,x
+                r4,-1
+                r5,5
+                r6,6
+                r7,7
+                """;
+        List<List<Row>> written = new ArrayList<>();
+        List<Long> progressTotals = new ArrayList<>();
+        CSVImportPipeline<Row> pipeline = CSVImportPipeline.<Row>builder()
+                .recordMapper(Row::of)
+                .batchStage((batch, reject) -> batch.stream()
+                        .filter(row -> {
+                            if (row.qty() >= 0) return true;
+                            reject.accept(row, "Negative quantity");
+                            return false;
+                        })
+                        .toList())
+                .batchWriter(failing("r5", "r6"))
+                .idOf(Row::id)
+                .onWritten(written::add)
+                .onProgress(summary -> progressTotals.add(summary.getTotalRecords()))
+                .batchSize(3)
+                .build();
+
+        ImportSummaryResponse summary = pipeline.run(csvOf(csv));
+
+        assertThat(summary.getTotalRecords()).isEqualTo(7);
+        assertThat(summary.getImported()).isEqualTo(3);
+        assertThat(summary.getRejected()).isEqualTo(2);
+        assertThat(summary.getFailed()).isEqualTo(2);
+        assertThat(summary.getBatches()).isEqualTo(2);
+        assertThat(summary.getImported() + summary.getRejected() + summary.getFailed())
+                .isEqualTo(summary.getTotalRecords());
+        assertThat(summary.getErrors()).extracting(ImportErrorResponse::getEntityId)
+                .containsExactly(null, "r4", "r5", "r6");
+        assertThat(summary.getErrors().get(1).getRecordNumber()).isEqualTo(4);
+        // Failed rows are not reported as written
+        assertThat(written).flatExtracting(batch -> batch.stream().map(Row::id).toList())
+                .containsExactly("r1", "r2", "r7");
+        // Unparseable records do not fill a batch: progress is reported once 3 rows are mapped
+        assertThat(progressTotals).containsExactly(4L, 7L);
+    }
+
+    @Test
+    void recordsMergedIntoOneFailedEntityAreAllCountedAsFailed() {
+        String csv = """
+                id,qty
+                r1,1
+                r1,2
+                r2,3
+                """;
+        CSVImportPipeline<Row> pipeline = CSVImportPipeline.<Row>builder()
+                .recordMapper(Row::of)
+                // Rows with the same id are written as one entity
+                .batchStage((batch, reject) -> {
+                    Map<String, Row> merged = new LinkedHashMap<>();
+                    batch.forEach(row -> merged.merge(row.id(), row,
+                            (first, second) -> new Row(first.id(), first.qty() + second.qty())));
+                    return List.copyOf(merged.values());
+                })
+                .batchWriter(failing("r1"))
+                .idOf(Row::id)
+                .build();
+
+        ImportSummaryResponse summary = pipeline.run(csvOf(csv));
+
+        assertThat(summary.getImported()).isEqualTo(1);
+        assertThat(summary.getFailed()).isEqualTo(2);
+        assertThat(summary.getErrors()).hasSize(1);
+    }
+
+    @Test
+    void batchThatCannotBeValidatedIsRejectedWhole() {
+        String csv = """
+                id,qty
+                r1,1
+                r2,2
+                """;
+        CSVImportPipeline<Row> pipeline = CSVImportPipeline.<Row>builder()
+                .recordMapper(Row::of)
+                .batchStage((batch, reject) -> {
+                    throw new AppException(ErrorCode.FILE_PARSE_FAILED);
+                })
+                .batchWriter(failing())
+                .idOf(Row::id)
+                .build();
+
+        ImportSummaryResponse summary = pipeline.run(csvOf(csv));
+
+        assertThat(summary.getRejected()).isEqualTo(2);
+        assertThat(summary.getImported()).isZero();
+        assertThat(summary.getErrors()).extracting(ImportErrorResponse::getMessage)
+                .containsOnly(ErrorCode.FILE_PARSE_FAILED.getMessage());
+    }
+
+    @Test
+    void reportedErrorsAreCapped() {
+        StringBuilder csv = new StringBuilder("id,qty\n");
+        for (int i = 0; i < 5; i++) csv.append("r").append(i).append(",x\n");
+        CSVImportPipeline<Row> pipeline = CSVImportPipeline.<Row>builder()
+                .recordMapper(Row::of)
+                .batchWriter(failing())
+                .idOf(Row::id)
+                .maxReportedErrors(2)
+                .build();
+
+        ImportSummaryResponse summary = pipeline.run(csvOf(csv.toString()));
+
+        assertThat(summary.getRejected()).isEqualTo(5);
+        assertThat(summary.getErrors()).hasSize(2);
+        assertThat(summary.getErrorsTruncated()).isTrue();
+    }
+
+    @Test
+    void malformedCsvFailsTheImport() {
+        CSVImportPipeline<Row> pipeline = CSVImportPipeline.<Row>builder()
+                .recordMapper(Row::of)
+                .batchWriter(failing())
+                .idOf(Row::id)
+                .build();
+
+        assertThatThrownBy(() -> pipeline.run(csvOf("id,qty\n\"r1,1\n")))
+                .isInstanceOf(AppException.class)
+                .extracting(e -> ((AppException) e).getErrorCode())
+                .isEqualTo(ErrorCode.FILE_PARSE_FAILED);
+    }
+
+    private record Row(String id, int qty) {
+        static Row of(CSVRecord csvRecord) {
+            return new Row(csvRecord.get("id"), Integer.parseInt(csvRecord.get("qty")));
+        }
+    }
+
+    // A writer that writes everything but the given ids
+    private static Function<List<Row>, BatchWriteReport> failing(String... failedIds) {
+        List<String> failed = List.of(failedIds);
+        return rows -> {
+            List<String> unwritten = rows.stream().map(Row::id).filter(failed::contains).toList();
+            return BatchWriteReport.builder()
+                    .written(rows.size() - unwritten.size())
+                    .failures(unwritten.isEmpty() ? List.of() : List.of(BatchWriteReport.ChunkFailure.builder()
+                            .entityIds(unwritten)
+                            .message("Unprocessed")
+                            .build()))
+                    .build();
+        };
+    }
+
+    private static InputStream csvOf(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,139 @@
+package org.reddot15.be_stockmanager.util;
+
+import org.junit.jupiter.api.Test;
+import org.reddot15.be_stockmanager.exception.AppException;
+import org.reddot15.be_stockmanager.exception.ErrorCode;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PaginationTokenCodecTest {
+    private static final byte[] SIGNING_KEY = "test-signing-key".getBytes(StandardCharsets.UTF_8);
+
+    private final PaginationTokenCodec codec = new PaginationTokenCodec(SIGNING_KEY);
+
+    @Test
+    void roundTripKeepsEveryType() {
+        Map<String, AttributeValue> lastEvaluatedKey = Map.of(
+                "pk", AttributeValue.fromS("Products"),
+                "entity_id", AttributeValue.fromS("12345"),
+                "sale_price", AttributeValue.fromN("19.90"),
+                "checksum", AttributeValue.fromB(SdkBytes.fromByteArray(new byte[]{0, 1, (byte) 0xFF})),
+                "archived", AttributeValue.fromBool(false),
+                "featured", AttributeValue.fromBool(true));
+
+        Map<String, AttributeValue> decoded = codec.decode(codec.encode(lastEvaluatedKey));
+
+        assertThat(decoded).isEqualTo(lastEvaluatedKey);
+        // A numeric-looking id stays a string
+        assertThat(decoded.get("entity_id").s()).isEqualTo("12345");
+        assertThat(decoded.get("entity_id").n()).isNull();
+    }
+
+    @Test
+    void longValueRoundTripsThroughAMultiByteLength() {
+        // 20,000 bytes take a three-byte length
+        Map<String, AttributeValue> lastEvaluatedKey = Map.of(
+                "pk", AttributeValue.fromS("Products"),
+                "entity_id", AttributeValue.fromS("x".repeat(20_000)));
+
+        assertThat(codec.decode(codec.encode(lastEvaluatedKey))).isEqualTo(lastEvaluatedKey);
+    }
+
+    @Test
+    void missingTokenDecodesToNull() {
+        assertThat(codec.encode(null)).isNull();
+        assertThat(codec.encode(Map.of())).isNull();
+        assertThat(codec.decode(null)).isNull();
+        assertThat(codec.decode(" ")).isNull();
+    }
+
+    @Test
+    void tamperedMacIsRejected() {
+        byte[] token = decodeBase64(codec.encode(Map.of("entity_id", AttributeValue.fromS("P1"))));
+        token[token.length - 1] ^= 1;
+
+        assertInvalid(encodeBase64(token));
+    }
+
+    @Test
+    void tamperedBodyIsRejected() {
+        byte[] token = decodeBase64(codec.encode(Map.of("entity_id", AttributeValue.fromS("P1"))));
+        // Last byte of the value "P1"
+        token[token.length - 13] ^= 1;
+
+        assertInvalid(encodeBase64(token));
+    }
+
+    @Test
+    void tokenSignedWithAnotherKeyIsRejected() {
+        PaginationTokenCodec otherCodec = new PaginationTokenCodec("other-key".getBytes(StandardCharsets.UTF_8));
+
+        assertInvalid(otherCodec.encode(Map.of("entity_id", AttributeValue.fromS("P1"))));
+    }
+
+    @Test
+    void truncatedBodyIsRejectedEvenWhenSigned() {
+        // Version 1, one attribute, entity_id, S of length 5 with only 2 bytes present
+        assertInvalid(signed(new byte[]{1, 1, 2, 1, 5, 'P', '1'}));
+        // The attribute itself is missing
+        assertInvalid(signed(new byte[]{1, 1}));
+    }
+
+    @Test
+    void overlongLengthIsRejectedEvenWhenSigned() {
+        // A five-group varint does not fit the lengths the codec writes
+        assertInvalid(signed(new byte[]{1, 1, 2, 1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0}));
+    }
+
+    @Test
+    void trailingBytesAndUnknownVersionAreRejected() {
+        assertThat(codec.decode(signed(new byte[]{1, 1, 2, 1, 2, 'P', '1'})))
+                .isEqualTo(Map.of("entity_id", AttributeValue.fromS("P1")));
+        assertInvalid(signed(new byte[]{1, 1, 2, 1, 2, 'P', '1', 0}));
+        assertInvalid(signed(new byte[]{2, 1, 2, 1, 2, 'P', '1'}));
+    }
+
+    @Test
+    void invalidBase64IsRejected() {
+        assertInvalid("not a token!");
+    }
+
+    private static void assertInvalid(String token) {
+        assertThatThrownBy(() -> new PaginationTokenCodec(SIGNING_KEY).decode(token))
+                .isInstanceOf(AppException.class)
+                .extracting(e -> ((AppException) e).getErrorCode())
+                .isEqualTo(ErrorCode.INVALID_PAGINATION_TOKEN);
+    }
+
+    // A hand-written body with a valid signature, to reach the checks behind the MAC
+    private static String signed(byte[] body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(SIGNING_KEY, "HmacSHA256"));
+            byte[] token = Arrays.copyOf(body, body.length + 12);
+            System.arraycopy(mac.doFinal(body), 0, token, body.length, 12);
+            return encodeBase64(token);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] decodeBase64(String token) {
+        return Base64.getUrlDecoder().decode(token);
+    }
+
+    private static String encodeBase64(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,77 @@
+package org.reddot15.be_stockmanager.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.reddot15.be_stockmanager.entity.pagination.PaginatedResult;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextExportUtilTest {
+
+    @Test
+    void gzipIsAcceptedUnlessRefused() {
+        assertThat(TextExportUtil.acceptsGzip("gzip")).isTrue();
+        assertThat(TextExportUtil.acceptsGzip("deflate, GZIP;q=0.5")).isTrue();
+        assertThat(TextExportUtil.acceptsGzip("br, gzip ; q=1.0")).isTrue();
+
+        assertThat(TextExportUtil.acceptsGzip(null)).isFalse();
+        assertThat(TextExportUtil.acceptsGzip("")).isFalse();
+        assertThat(TextExportUtil.acceptsGzip("deflate, br")).isFalse();
+        assertThat(TextExportUtil.acceptsGzip("x-gzip")).isFalse();
+        assertThat(TextExportUtil.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(TextExportUtil.acceptsGzip("gzip; q=0.000")).isFalse();
+    }
+
+    @Test
+    void csvExportWritesEveryPage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        TextExportUtil.exportToCsv(
+                List.of(new CSVColumn<>("ID", Row::id), new CSVColumn<>("Name", Row::name)),
+                pages(),
+                false).writeTo(out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .isEqualTo("ID,Name\r\nr1,\"One, first\"\r\nr2,\r\nr3,Three\r\n");
+    }
+
+    @Test
+    void ndjsonExportIsGzippedWhenAsked() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        TextExportUtil.exportToNdjson(new ObjectMapper(), Function.identity(), pages(), true).writeTo(out);
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("""
+                    {"id":"r1","name":"One, first"}
+                    {"id":"r2","name":null}
+                    {"id":"r3","name":"Three"}
+                    """);
+        }
+    }
+
+    private record Row(String id, String name) {
+    }
+
+    // Two pages, the second resumed from the first one's last key
+    private static Function<Map<String, AttributeValue>, PaginatedResult<Row>> pages() {
+        return exclusiveStartKey -> exclusiveStartKey == null
+                ? PaginatedResult.<Row>builder()
+                        .items(List.of(new Row("r1", "One, first"), new Row("r2", null)))
+                        .lastEvaluatedKey(Map.of("entity_id", AttributeValue.fromS("r2")))
+                        .build()
+                : PaginatedResult.<Row>builder()
+                        .items(List.of(new Row("r3", "Three")))
+                        .build();
+    }
+}